@@ -0,0 +1,256 @@
+/*
+ * Copyright 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.nurik.roman.formwatchface.common;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+
+import static net.nurik.roman.formwatchface.common.FormClockRenderer.ClockPaints;
+
+/**
+ * Draws glyphs onto an Android canvas with a renderer's paints: directly, or into a
+ * {@link GlyphBatch} while one is set. Settled glyphs are drawn from their recordings (see
+ * {@link #drawRecording}) rather than by running the glyph again.
+ */
+class AndroidGlyphCanvas implements GlyphCanvas {
+    public Canvas canvas;
+    public ClockPaints paints;
+
+    // while non-null, shapes are batched instead of drawn
+    public GlyphBatch batch;
+
+    // if positive, the pixel scale to simplify glyphs for; see GlyphSimplifier
+    public float simplifyScale;
+
+    private Path path = new Path();
+    private Path mBatchShape = new Path();
+    private RectF tempRectF = new RectF();
+
+    /**
+     * Draws, or batches, a glyph's recorded drawing, simplified if {@link #simplifyScale} is set.
+     */
+    public void drawRecording(GlyphCommands commands) {
+        if (simplifyScale > 0) {
+            commands = commands.getSimplified(simplifyScale);
+        }
+        if (batch != null) {
+            commands.addTo(batch, canvas);
+        } else {
+            commands.draw(canvas, paints);
+        }
+    }
+
+    /*
+        Transforms
+     */
+
+    @Override
+    public void save() {
+        canvas.save();
+    }
+
+    @Override
+    public void restore() {
+        canvas.restore();
+    }
+
+    @Override
+    public void translate(float dx, float dy) {
+        canvas.translate(dx, dy);
+    }
+
+    @Override
+    public void rotate(float degrees, float px, float py) {
+        canvas.rotate(degrees, px, py);
+    }
+
+    @Override
+    public void scale(float sx, float sy, float px, float py) {
+        canvas.scale(sx, sy, px, py);
+    }
+
+    /*
+        Path building
+     */
+
+    @Override
+    public void pathReset() {
+        path.reset();
+    }
+
+    @Override
+    public void pathMoveTo(float x, float y) {
+        path.moveTo(x, y);
+    }
+
+    @Override
+    public void pathLineTo(float x, float y) {
+        path.lineTo(x, y);
+    }
+
+    @Override
+    public void pathClose() {
+        path.close();
+    }
+
+    @Override
+    public void pathArcTo(float l, float t, float r, float b, float startAngle, float sweepAngle,
+                          boolean forceMoveTo) {
+        tempRectF.set(l, t, r, b);
+        path.arcTo(tempRectF, startAngle, sweepAngle, forceMoveTo);
+    }
+
+    /*
+        API 21 compat methods
+     */
+
+    private void drawArc(float l, float t, float r, float b, float startAngle, float sweepAngle, boolean useCenter, Paint paint) {
+        tempRectF.set(l, t, r, b);
+        canvas.drawArc(tempRectF, startAngle, sweepAngle, useCenter, paint);
+    }
+
+    private void drawRoundRect(float l, float t, float r, float b, float rx, float ry, Paint paint) {
+        tempRectF.set(l, t, r, b);
+        canvas.drawRoundRect(tempRectF, rx, ry, paint);
+    }
+
+    private void drawOval(float l, float t, float r, float b, Paint paint) {
+        tempRectF.set(l, t, r, b);
+        canvas.drawOval(tempRectF, paint);
+    }
+
+    /**
+     * Whether a shape with the given bounds is too small to see when simplifying. Glyphs only
+     * ever scale shapes down, so the unscaled size is an upper bound on the drawn size.
+     */
+    private boolean isNegligible(float l, float t, float r, float b) {
+        return simplifyScale > 0 && Math.max(Math.abs(r - l), Math.abs(b - t)) * simplifyScale
+                < GlyphSimplifier.MIN_SHAPE_PX;
+    }
+
+    /*
+        Batching
+     */
+
+    private Path obtainBatchShape() {
+        mBatchShape.rewind();
+        return mBatchShape;
+    }
+
+    /*
+        Stroke + fill drawing wrappers
+     */
+
+    @Override
+    public void drawArc(float l, float t, float r, float b, float startAngle, float sweepAngle,
+                        boolean useCenter, int color) {
+        if (isNegligible(l, t, r, b)) {
+            return;
+        } else if (batch != null) {
+            if (sweepAngle == 0) {
+                return; // like Canvas.drawArc, draw nothing
+            }
+            Path shape = obtainBatchShape();
+            tempRectF.set(l, t, r, b);
+            if (Math.abs(sweepAngle) >= 360) {
+                shape.addOval(tempRectF, Path.Direction.CW);
+            } else if (useCenter) {
+                shape.moveTo(tempRectF.centerX(), tempRectF.centerY());
+                shape.arcTo(tempRectF, startAngle, sweepAngle, false);
+                shape.close();
+            } else {
+                shape.arcTo(tempRectF, startAngle, sweepAngle, true);
+            }
+            batch.add(canvas, shape, color);
+            return;
+        }
+
+        drawArc(l, t, r, b, startAngle, sweepAngle, useCenter, paints.fills[color]);
+        if (paints.hasStroke) {
+            drawArc(l, t, r, b, startAngle, sweepAngle, useCenter, paints.strokes[color]);
+        }
+    }
+
+    @Override
+    public void drawRoundRect(float l, float t, float r, float b, float rx, float ry,
+                              int color) {
+        if (isNegligible(l, t, r, b)) {
+            return;
+        } else if (batch != null) {
+            Path shape = obtainBatchShape();
+            tempRectF.set(l, t, r, b);
+            shape.addRoundRect(tempRectF, rx, ry, Path.Direction.CW);
+            batch.add(canvas, shape, color);
+            return;
+        }
+
+        drawRoundRect(l, t, r, b, rx, ry, paints.fills[color]);
+        if (paints.hasStroke) {
+            drawRoundRect(l, t, r, b, rx, ry, paints.strokes[color]);
+        }
+    }
+
+    @Override
+    public void drawOval(float l, float t, float r, float b, int color) {
+        if (isNegligible(l, t, r, b)) {
+            return;
+        } else if (batch != null) {
+            Path shape = obtainBatchShape();
+            tempRectF.set(l, t, r, b);
+            shape.addOval(tempRectF, Path.Direction.CW);
+            batch.add(canvas, shape, color);
+            return;
+        }
+
+        drawOval(l, t, r, b, paints.fills[color]);
+        if (paints.hasStroke) {
+            drawOval(l, t, r, b, paints.strokes[color]);
+        }
+    }
+
+    @Override
+    public void drawRect(float l, float t, float r, float b, int color) {
+        if (isNegligible(l, t, r, b)) {
+            return;
+        } else if (batch != null) {
+            Path shape = obtainBatchShape();
+            shape.addRect(l, t, r, b, Path.Direction.CW);
+            batch.add(canvas, shape, color);
+            return;
+        }
+
+        canvas.drawRect(l, t, r, b, paints.fills[color]);
+        if (paints.hasStroke) {
+            canvas.drawRect(l, t, r, b, paints.strokes[color]);
+        }
+    }
+
+    @Override
+    public void drawPath(int color) {
+        if (batch != null) {
+            batch.add(canvas, path, color);
+            return;
+        }
+
+        canvas.drawPath(path, paints.fills[color]);
+        if (paints.hasStroke) {
+            canvas.drawPath(path, paints.strokes[color]);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.nurik.roman.formwatchface.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Every glyph animation that one or more {@link FormClockRenderer}s will run over a range of
+ * time, sorted by start time. Useful for planning work (scheduling wakeups, pre-rendering,
+ * benchmarking) ahead of time rather than discovering it frame by frame.
+ */
+public class AnimationTimeline {
+    private List<Window> mWindows = new ArrayList<>();
+
+    /**
+     * Builds the timeline of every animation window from the given renderers that overlaps
+     * [fromMillis, toMillis).
+     */
+    public AnimationTimeline(long fromMillis, long toMillis, FormClockRenderer... renderers) {
+        for (FormClockRenderer renderer : renderers) {
+            renderer.addAnimationWindows(fromMillis, toMillis, mWindows);
+        }
+
+        Collections.sort(mWindows, new Comparator<Window>() {
+            @Override
+            public int compare(Window lhs, Window rhs) {
+                if (lhs.startMillis != rhs.startMillis) {
+                    return lhs.startMillis < rhs.startMillis ? -1 : 1;
+                }
+                if (lhs.endMillis != rhs.endMillis) {
+                    return lhs.endMillis < rhs.endMillis ? -1 : 1;
+                }
+                return 0;
+            }
+        });
+    }
+
+    public List<Window> getWindows() {
+        return mWindows;
+    }
+
+    /**
+     * Returns the first window that is still running or hasn't started yet at the given time,
+     * or null if there is none in the timeline.
+     */
+    public Window getNextWindow(long timeMillis) {
+        for (Window window : mWindows) {
+            if (window.endMillis > timeMillis) {
+                return window;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A single animation: a renderer transitioning its glyphs from one second or minute to the
+     * next.
+     */
+    public static class Window {
+        public final FormClockRenderer renderer;
+        public final long startMillis;
+        public final long endMillis;
+
+        /**
+         * The glyph slots that animate, in the order they start animating.
+         */
+        public final int[] glyphIndices;
+
+        Window(FormClockRenderer renderer, long startMillis, long endMillis, int[] glyphIndices) {
+            this.renderer = renderer;
+            this.startMillis = startMillis;
+            this.endMillis = endMillis;
+            this.glyphIndices = glyphIndices;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.nurik.roman.formwatchface.common;
+
+/**
+ * The current time, read once per frame and shared by any number of {@link FormClockRenderer}s
+ * (see {@link FormClockRenderer#setClockModel(ClockModel)}), so that they don't each read the
+ * clock and convert it to local time, and so that they all draw the same instant.
+ */
+public class ClockModel {
+    private ClockSource mClockSource;
+    private ClockTime mClockTime = new ClockTime();
+    private long mLastFrameTime = Long.MIN_VALUE;
+    private long mTimeMillis;
+    private long mLocalMillis;
+    private int mTimeZoneGeneration;
+
+    public ClockModel() {
+        this(ClockSource.SYSTEM);
+    }
+
+    public ClockModel(ClockSource clockSource) {
+        mClockSource = clockSource;
+        update();
+    }
+
+    public ClockSource getClockSource() {
+        return mClockSource;
+    }
+
+    public void setClockSource(ClockSource clockSource) {
+        mClockSource = clockSource;
+        mLastFrameTime = Long.MIN_VALUE;
+        update();
+    }
+
+    /**
+     * Reads the current time. Should be called once per frame, before updating any renderers
+     * that use this model.
+     */
+    public void update() {
+        mTimeMillis = mClockSource.currentTimeMillis();
+        mLocalMillis = mClockTime.toLocalMillis(mTimeMillis);
+    }
+
+    /**
+     * Like {@link #update()}, but does nothing if the model was already updated for the given
+     * frame time (e.g. {@link android.view.View#getDrawingTime()}). Lets several views sharing a
+     * model each update it while drawing without moving the time mid-frame.
+     */
+    public void update(long frameTime) {
+        if (frameTime == mLastFrameTime) {
+            return;
+        }
+
+        mLastFrameTime = frameTime;
+        update();
+    }
+
+    /**
+     * Should be called when the default time zone changes.
+     */
+    public void onTimeZoneChanged() {
+        mClockTime.invalidate();
+        mLocalMillis = mClockTime.toLocalMillis(mTimeMillis);
+        ++mTimeZoneGeneration;
+    }
+
+    /**
+     * Returns a number that changes whenever the time zone changes, so that renderers can tell
+     * that their cached time state is stale.
+     */
+    public int getTimeZoneGeneration() {
+        return mTimeZoneGeneration;
+    }
+
+    public long getTimeMillis() {
+        return mTimeMillis;
+    }
+
+    public long getLocalMillis() {
+        return mLocalMillis;
+    }
+
+    public long toLocalMillis(long millis) {
+        return mClockTime.toLocalMillis(millis);
+    }
+}
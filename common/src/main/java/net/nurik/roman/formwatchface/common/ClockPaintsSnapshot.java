@@ -0,0 +1,64 @@
+/*
+ * Copyright 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.nurik.roman.formwatchface.common;
+
+import static net.nurik.roman.formwatchface.common.FormClockRenderer.ClockPaints;
+
+/**
+ * Captures the identity, colors and flags of a {@link ClockPaints}, so that caches of rendered glyphs can
+ * tell when their paints have been swapped or recolored in place.
+ */
+class ClockPaintsSnapshot {
+    private ClockPaints mPaints;
+    private boolean mHasStroke;
+    private boolean mUnionOutlines;
+    private int[] mFillColors = new int[3];
+    private int[] mStrokeColors = new int[3];
+
+    public boolean matches(ClockPaints paints) {
+        if (paints != mPaints || paints == null || paints.hasStroke != mHasStroke
+                || paints.unionOutlines != mUnionOutlines) {
+            return false;
+        }
+
+        for (int i = 0; i < 3; i++) {
+            if (paints.fills[i].getColor() != mFillColors[i]) {
+                return false;
+            }
+
+            if (paints.hasStroke && paints.strokes[i].getColor() != mStrokeColors[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public void set(ClockPaints paints) {
+        mPaints = paints;
+        mHasStroke = paints.hasStroke;
+        mUnionOutlines = paints.unionOutlines;
+        for (int i = 0; i < 3; i++) {
+            mFillColors[i] = paints.fills[i].getColor();
+            mStrokeColors[i] = paints.hasStroke ? paints.strokes[i].getColor() : 0;
+        }
+    }
+
+    public void clear() {
+        mPaints = null;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.nurik.roman.formwatchface.common;
+
+/**
+ * Where {@link FormClockRenderer} and friends get the current time from. The default is
+ * {@link #SYSTEM}; a {@link VirtualClockSource} can be injected instead to step or fast-forward
+ * time, e.g. to simulate a day of frames when benchmarking.
+ */
+public interface ClockSource {
+    ClockSource SYSTEM = new ClockSource() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    /**
+     * Returns the current time in epoch millis.
+     */
+    long currentTimeMillis();
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.nurik.roman.formwatchface.common;
+
+import java.util.TimeZone;
+
+/**
+ * Converts epoch millis to local wall clock time without going through
+ * {@link java.util.Calendar}. The zone offset is cached until the next offset transition (e.g.
+ * the next DST change), or until {@link #invalidate()} is called when the time zone changes.
+ */
+class ClockTime {
+    static final long SECOND_MILLIS = 1000;
+    static final long MINUTE_MILLIS = 60 * SECOND_MILLIS;
+    static final long HOUR_MILLIS = 60 * MINUTE_MILLIS;
+    static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+
+    /**
+     * How far ahead to look for the next offset transition. Zones are assumed to never have two
+     * transitions within this window.
+     */
+    private static final long TRANSITION_SEARCH_MILLIS = 7 * DAY_MILLIS;
+
+    private TimeZone mTimeZone;
+    private int mOffset;
+    private long mOffsetValidFrom;
+    private long mOffsetValidUntil;
+
+    public ClockTime() {
+        invalidate();
+    }
+
+    /**
+     * Forgets the cached time zone and offset, e.g. after the default time zone changes.
+     */
+    public void invalidate() {
+        mTimeZone = null;
+        mOffsetValidFrom = Long.MAX_VALUE;
+        mOffsetValidUntil = Long.MIN_VALUE;
+    }
+
+    public long toLocalMillis(long millis) {
+        return millis + getOffset(millis);
+    }
+
+    public int getOffset(long millis) {
+        if (millis < mOffsetValidFrom || millis >= mOffsetValidUntil) {
+            refreshOffset(millis);
+        }
+        return mOffset;
+    }
+
+    private void refreshOffset(long millis) {
+        if (mTimeZone == null) {
+            mTimeZone = TimeZone.getDefault();
+        }
+
+        mOffset = mTimeZone.getOffset(millis);
+        mOffsetValidFrom = millis;
+        long searchEnd = millis + TRANSITION_SEARCH_MILLIS;
+        if (mTimeZone.getOffset(searchEnd) == mOffset) {
+            mOffsetValidUntil = searchEnd;
+            return;
+        }
+
+        // binary search for the first millisecond with a different offset
+        long lo = millis;
+        long hi = searchEnd;
+        while (hi - lo > 1) {
+            long mid = lo + (hi - lo) / 2;
+            if (mTimeZone.getOffset(mid) == mOffset) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+        mOffsetValidUntil = hi;
+    }
+
+    static long floorMod(long x, long y) {
+        long mod = x % y;
+        return (mod < 0) ? mod + y : mod;
+    }
+
+    static int getHourOfDay(long localMillis) {
+        return (int) (floorMod(localMillis, DAY_MILLIS) / HOUR_MILLIS);
+    }
+
+    static int getMinute(long localMillis) {
+        return (int) (floorMod(localMillis, HOUR_MILLIS) / MINUTE_MILLIS);
+    }
+
+    static int getSecond(long localMillis) {
+        return (int) (floorMod(localMillis, MINUTE_MILLIS) / SECOND_MILLIS);
+    }
+}
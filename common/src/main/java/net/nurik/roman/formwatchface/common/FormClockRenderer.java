@@ -16,20 +16,23 @@
 
 package net.nurik.roman.formwatchface.common;
 
+import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.Path;
 import android.graphics.PointF;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
 import android.graphics.RectF;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static net.nurik.roman.formwatchface.common.MathUtil.accelerate5;
@@ -38,47 +41,103 @@ import static net.nurik.roman.formwatchface.common.MathUtil.interpolate;
 import static net.nurik.roman.formwatchface.common.MathUtil.progress;
 
 public class FormClockRenderer {
-    private static final long DEBUG_TIME_MILLIS = 0; //new Date(2015, 2, 22, 12, 59, 52).getTime();
-    private static final long BOOT_TIME_MILLIS = System.currentTimeMillis();
-
     private static final String DEBUG_TIME = null;//"0123456789";
     private static final String DEBUG_GLYPH = null;//"2_3";
     private static final boolean DEBUG_SHOW_RECTS = false;
 
+    private static final int OFFS_GLYPH_DIRTY_PADDING = 2;
+    private static final int BAKED_FRAME_PADDING = 2;
+
     private int[] mAnimatedGlyphIndices = new int[20];
     private int[] mTempAnimatedGlyphIndices = new int[20];
     private int mAnimatedGlyphIndexCount = 0;
-    private Glyph[] mGlyphs = new Glyph[20];
+    // when each glyph slot starts and ends animating, in animation time; computed once per
+    // boundary, infinite for slots that don't animate
+    private float[] mGlyphAnimStartTimes = new float[20];
+    private float[] mGlyphAnimEndTimes = new float[20];
+    private float[] mTempGlyphAnimProgress = new float[20];
+    private int[] mGlyphTransitions = new int[20];
     private int mGlyphCount = 0;
 
     private Options mOptions;
     private ClockPaints mPaints;
-    private Font mFont = new Font();
+    private Font mFont;
+    private GlyphContext mGlyphContext;
+    private AndroidGlyphCanvas mGlyphCanvas = new AndroidGlyphCanvas();
+    private GlyphBatch mGlyphBatch;
 
     // for offscreen glyphs
     private Bitmap mOffsGlyphBitmap;
     private Canvas mOffsGlyphCanvas;
     private Paint mOffsGlyphPaint;
     private int mOffsGlyphBitmapUnpaddedSize;
+    private Rect mOffsGlyphDirtyRect = new Rect();
+    private RectF mOffsGlyphDirtyRectF = new RectF();
+
+    // for pre-rasterized settled glyphs; channel-packed (see GlyphTint) where possible, so that
+    // every theme shares one atlas, and otherwise two, so that both themes can be drawn during a
+    // theme change animation without rebuilding every frame
+    private GlyphTint mGlyphTint = new GlyphTint();
+    private Paint mGlyphCompositePaint;
+    private GlyphAtlas[] mGlyphAtlases = new GlyphAtlas[2];
+    private int mLastGlyphAtlasIndex = mGlyphAtlases.length - 1;
+    private int[] mTempAtlasCellWidths = new int[GlyphAtlas.GLYPHS.length()];
+    private RectF mTempAtlasDstRectF = new RectF();
+
+    // for baked transition frames, optional
+    private GlyphFrameCache mFrameCache;
+    private Canvas mFrameCanvas;
 
     private Paint mDebugShowRectPaint;
 
     private long mAnimDuration;
     private long mAnimTime;
 
-    private Calendar mTempCalendar;
+    // the renderer updates its own clock model unless it was given a shared one
+    private ClockModel mClockModel = new ClockModel();
+    private boolean mOwnsClockModel = true;
+    private int mClockModelTimeZoneGeneration;
+
+    // for addAnimationWindows; its own ClockTime so that looking ahead doesn't disturb the clock
+    // model's cached offset, reset whenever the model or its time zone changes
+    private ClockTime mLookaheadClockTime = new ClockTime();
+    private int mLookaheadTimeZoneGeneration;
+    private char[] mLookaheadCurrentChars = new char[20];
+    private char[] mLookaheadNextChars = new char[20];
+    private int[] mLookaheadGlyphIndices = new int[20];
     private long mTimeMillis;
     private long mMillisToNext;
+    // the second or minute that the current glyphs were computed for, as [start, end) epoch millis
+    private long mPeriodStartMillis;
+    private long mPeriodEndMillis;
+    private char[] mCurrentTimeChars = new char[20];
+    private char[] mNextTimeChars = new char[20];
 
     private PointF mMeasuredSize = new PointF();
+    private Layout mLayout = new Layout();
+    private RectF mTempGlyphRectF = new RectF();
+
+    public FormClockRenderer(Context context, Options options, ClockPaints paints) {
+        this(Font.getDefault(context), options, paints);
+    }
 
-    public FormClockRenderer(Options options, ClockPaints paints) {
+    FormClockRenderer(Font font, Options options, ClockPaints paints) {
         this.mOptions = options;
         this.mPaints = paints;
-        this.mTempCalendar = Calendar.getInstance();
+        this.mFont = font;
+        this.mGlyphContext = mFont.newContext();
+        this.mGlyphContext.canvas = mGlyphCanvas;
+        this.mGlyphCanvas.paints = paints;
+        invalidatePeriod();
         updateTime();
         initOffsGlyphBitmap();
 
+        if (mOptions.bakedTransitionFrames > 0) {
+            mFrameCache = new GlyphFrameCache(mOptions.bakedTransitionFrames,
+                    mOptions.bakedTransitionCacheBytes);
+            mFrameCanvas = new Canvas();
+        }
+
         if (DEBUG_SHOW_RECTS) {
             mDebugShowRectPaint = new Paint();
             mDebugShowRectPaint.setStrokeWidth(4);
@@ -104,44 +163,102 @@ public class FormClockRenderer {
             mOffsGlyphBitmapUnpaddedSize = newUnpaddedSize;
         }
 
-        mOffsGlyphBitmap = Bitmap.createBitmap(
-                mOffsGlyphBitmapUnpaddedSize * 2,
-                mOffsGlyphBitmapUnpaddedSize * 2,
-                Bitmap.Config.ARGB_8888);
-        mOffsGlyphCanvas = new Canvas(mOffsGlyphBitmap);
+        // the bitmap itself is taken from the pool on the first offscreen draw
+        mOffsGlyphCanvas = new Canvas();
         mOffsGlyphPaint = new Paint();
         mOffsGlyphPaint.setFilterBitmap(true);
     }
 
+    private void obtainOffsGlyphBitmap() {
+        if (mOffsGlyphBitmap == null) {
+            mOffsGlyphBitmap = GlyphBitmapPool.obtain(
+                    mOffsGlyphBitmapUnpaddedSize * 2,
+                    mOffsGlyphBitmapUnpaddedSize * 2);
+            mOffsGlyphCanvas.setBitmap(mOffsGlyphBitmap);
+        }
+    }
+
+    /**
+     * Returns this renderer's offscreen bitmaps (the offscreen glyph bitmap, glyph atlases and
+     * baked frames) to {@link GlyphBitmapPool}, e.g. before the renderer is replaced. They're
+     * taken from the pool again if the renderer draws offscreen afterwards.
+     */
+    public void release() {
+        if (mOffsGlyphBitmap != null) {
+            mOffsGlyphCanvas.setBitmap(null);
+            GlyphBitmapPool.release(mOffsGlyphBitmap);
+            mOffsGlyphBitmap = null;
+        }
+
+        for (int i = 0; i < mGlyphAtlases.length; i++) {
+            if (mGlyphAtlases[i] != null) {
+                mGlyphAtlases[i].release();
+            }
+        }
+
+        if (mFrameCache != null) {
+            mFrameCache.release();
+        }
+    }
+
     public void setPaints(ClockPaints paints) {
         mPaints = paints;
+        mGlyphCanvas.paints = paints;
+    }
+
+    /**
+     * Sets where {@link #updateTime()} gets the current time from. Defaults to
+     * {@link ClockSource#SYSTEM}.
+     */
+    public void setClockSource(ClockSource clockSource) {
+        mClockModel = new ClockModel(clockSource);
+        mOwnsClockModel = true;
+        invalidatePeriod();
+    }
+
+    /**
+     * Makes {@link #updateTime()} use the given shared clock model rather than reading the time
+     * itself. The model's owner is then responsible for calling {@link ClockModel#update()} once
+     * per frame, before updating the renderers that share it.
+     */
+    public void setClockModel(ClockModel clockModel) {
+        mClockModel = clockModel;
+        mOwnsClockModel = false;
+        invalidatePeriod();
+    }
+
+    /**
+     * Should be called when the default time zone changes, so that the next
+     * {@link #updateTime()} picks up the new zone offset. Not needed when using a shared clock
+     * model; call {@link ClockModel#onTimeZoneChanged()} instead.
+     */
+    public void onTimeZoneChanged() {
+        mClockModel.onTimeZoneChanged();
+    }
+
+    private void invalidatePeriod() {
+        mPeriodStartMillis = Long.MAX_VALUE;
+        mPeriodEndMillis = Long.MIN_VALUE;
+        mLookaheadClockTime.invalidate();
     }
 
     public void updateTime() {
-        mTimeMillis = System.currentTimeMillis();
-        if (DEBUG_TIME_MILLIS > 0) {
-            long v = DEBUG_TIME_MILLIS + (System.currentTimeMillis() - BOOT_TIME_MILLIS);
-            mTimeMillis = v;
+        if (mOwnsClockModel) {
+            mClockModel.update();
         }
+        mTimeMillis = mClockModel.getTimeMillis();
 
-        mTempCalendar.setTimeInMillis(mTimeMillis);
-
-        String currentTimeStr, nextTimeStr;
-        mTempCalendar.set(Calendar.MILLISECOND, 0);
-        if (mOptions.onlySeconds) {
-            currentTimeStr = secondsString(mTempCalendar);
-            mTempCalendar.add(Calendar.SECOND, 1);
-            nextTimeStr = secondsString(mTempCalendar);
-        } else {
-            mTempCalendar.set(Calendar.SECOND, 0);
-            currentTimeStr = hourMinString(mTempCalendar);
-            mTempCalendar.add(Calendar.MINUTE, 1);
-            nextTimeStr = hourMinString(mTempCalendar);
+        if (mClockModel.getTimeZoneGeneration() != mClockModelTimeZoneGeneration) {
+            mClockModelTimeZoneGeneration = mClockModel.getTimeZoneGeneration();
+            invalidatePeriod();
         }
 
-        mMillisToNext = mTempCalendar.getTimeInMillis() - mTimeMillis;
-        updateGlyphsAndAnimDuration(currentTimeStr, nextTimeStr);
+        if (mTimeMillis < mPeriodStartMillis || mTimeMillis >= mPeriodEndMillis) {
+            // crossed a boundary, or the clock jumped (time set, long sleep, etc.)
+            updatePeriod();
+        }
 
+        mMillisToNext = mPeriodEndMillis - mTimeMillis;
         if (mMillisToNext < mAnimDuration) {
             // currently animating
             mAnimTime = mAnimDuration - mMillisToNext;
@@ -150,33 +267,62 @@ public class FormClockRenderer {
         }
     }
 
-    public void updateGlyphsAndAnimDuration(String currentTimeStr, String nextTimeStr) {
+    /**
+     * Recomputes the glyphs and animation duration for the second or minute containing
+     * {@link #mTimeMillis}. Between boundaries only the animation time needs updating.
+     */
+    private void updatePeriod() {
+        // the next second or minute boundary in local time, and the local time there
+        long periodMillis = mOptions.onlySeconds
+                ? ClockTime.SECOND_MILLIS
+                : ClockTime.MINUTE_MILLIS;
+        long localMillis = mClockModel.getLocalMillis();
+        long millisToNext = periodMillis - ClockTime.floorMod(localMillis, periodMillis);
+        long nextLocalMillis = mClockModel.toLocalMillis(mTimeMillis + millisToNext);
+
+        int timeLength;
+        if (mOptions.onlySeconds) {
+            timeLength = secondsString(localMillis, mCurrentTimeChars);
+            secondsString(nextLocalMillis, mNextTimeChars);
+        } else {
+            timeLength = hourMinString(localMillis, mCurrentTimeChars);
+            hourMinString(nextLocalMillis, mNextTimeChars);
+        }
+
+        updateGlyphsAndAnimDuration(mCurrentTimeChars, mNextTimeChars, timeLength);
+
+        mPeriodEndMillis = mTimeMillis + millisToNext;
+        mPeriodStartMillis = mPeriodEndMillis - periodMillis;
+    }
+
+    public void updateGlyphsAndAnimDuration(char[] currentTime, char[] nextTime, int length) {
         mAnimatedGlyphIndexCount = 0;
         mGlyphCount = 0;
 
         if (DEBUG_GLYPH != null) {
-            mGlyphs[mGlyphCount++] = mFont.getGlyph(DEBUG_GLYPH);
+            mGlyphTransitions[mGlyphCount++] = mFont.getTransition(
+                    DEBUG_GLYPH.charAt(0), DEBUG_GLYPH.charAt(DEBUG_GLYPH.length() - 1));
             mTempAnimatedGlyphIndices[mAnimatedGlyphIndexCount++] = 0;
         } else if (DEBUG_TIME != null) {
             for (int i = 0; i < DEBUG_TIME.length(); i++) {
-                mGlyphs[mGlyphCount++] = mFont.getGlyph(Character.toString(DEBUG_TIME.charAt(i)));
+                char c = DEBUG_TIME.charAt(i);
+                mGlyphTransitions[mGlyphCount++] = mFont.getTransition(c, c);
             }
         } else {
-            int len = currentTimeStr.length();
-            for (int i = 0; i < len; i++) {
-                char c1 = currentTimeStr.charAt(i);
-                char c2 = nextTimeStr.charAt(i);
+            for (int i = 0; i < length; i++) {
+                char c1 = currentTime[i];
+                char c2 = nextTime[i];
 
                 if (c1 == ':') {
-                    mGlyphs[mGlyphCount++] = mFont.getGlyph(":");
+                    mGlyphTransitions[mGlyphCount++] = mFont.getTransition(':', ':');
                     continue;
                 }
 
                 if (c1 == c2) {
-                    mGlyphs[mGlyphCount++] = mFont.getGlyph(String.valueOf(c1));
+                    mGlyphTransitions[mGlyphCount++] = mFont.getTransition(c1, c1);
                 } else {
                     mTempAnimatedGlyphIndices[mAnimatedGlyphIndexCount++] = i;
-                    mGlyphs[mGlyphCount++] = mFont.getGlyph(c1 + "_" + c2);
+                    mGlyphTransitions[mGlyphCount++] = mFont.getTransition(c1, c2);
                 }
             }
         }
@@ -189,145 +335,540 @@ public class FormClockRenderer {
         mAnimDuration = mAnimatedGlyphIndexCount * mOptions.glyphAnimAverageDelay
                 + mOptions.glyphAnimDuration;
         mAnimTime = 0;
+        updateGlyphAnimSchedule();
+    }
+
+    /**
+     * Computes when each animated glyph starts and ends animating. Later glyphs (in reverse
+     * order) start increasingly later, spread over the whole animation duration.
+     */
+    private void updateGlyphAnimSchedule() {
+        for (int i = 0; i < mGlyphCount; i++) {
+            mGlyphAnimStartTimes[i] = Float.POSITIVE_INFINITY;
+            mGlyphAnimEndTimes[i] = Float.POSITIVE_INFINITY;
+        }
+
+        for (int i = 0; i < mAnimatedGlyphIndexCount; i++) {
+            float glyphStartAnimTime = 0;
+            if (mAnimatedGlyphIndexCount > 1) {
+                glyphStartAnimTime = interpolate(accelerate5(
+                                i * 1f / (mAnimatedGlyphIndexCount - 1)),
+                        0, mAnimDuration - mOptions.glyphAnimDuration);
+            }
+
+            int glyphIndex = mAnimatedGlyphIndices[i];
+            mGlyphAnimStartTimes[glyphIndex] = glyphStartAnimTime;
+            mGlyphAnimEndTimes[glyphIndex] = glyphStartAnimTime + mOptions.glyphAnimDuration;
+        }
     }
 
     public long timeToNextAnimation() {
         return mMillisToNext - mAnimDuration;
     }
 
-    public PointF measure(boolean allowAnimate) {
-        mMeasuredSize.set(0, 0);
-        layoutPass(new LayoutPassCallback() {
-            @Override
-            public void visitGlyph(Glyph glyph, float glyphAnimProgress, RectF rect) {
-                mMeasuredSize.x = Math.max(mMeasuredSize.x, rect.right);
-                mMeasuredSize.y = Math.max(mMeasuredSize.y, rect.bottom);
+    /**
+     * Adds a window for every glyph animation this renderer will run that overlaps
+     * [fromMillis, toMillis) to the given list. Animations run up to each second or minute
+     * boundary, in the time zone of the renderer's clock model.
+     */
+    void addAnimationWindows(long fromMillis, long toMillis,
+                             List<AnimationTimeline.Window> out) {
+        if (mClockModel.getTimeZoneGeneration() != mLookaheadTimeZoneGeneration) {
+            mLookaheadTimeZoneGeneration = mClockModel.getTimeZoneGeneration();
+            mLookaheadClockTime.invalidate();
+        }
+
+        ClockTime clockTime = mLookaheadClockTime;
+        long periodMillis = mOptions.onlySeconds
+                ? ClockTime.SECOND_MILLIS
+                : ClockTime.MINUTE_MILLIS;
+        char[] currentTime = mLookaheadCurrentChars;
+        char[] nextTime = mLookaheadNextChars;
+        int[] animatedGlyphIndices = mLookaheadGlyphIndices;
+
+        long localMillis = clockTime.toLocalMillis(fromMillis);
+        long boundaryMillis = fromMillis + periodMillis
+                - ClockTime.floorMod(localMillis, periodMillis);
+        while (boundaryMillis - periodMillis < toMillis) {
+            long previousLocalMillis = clockTime.toLocalMillis(boundaryMillis - 1);
+            long boundaryLocalMillis = clockTime.toLocalMillis(boundaryMillis);
+            int length;
+            if (mOptions.onlySeconds) {
+                length = secondsString(previousLocalMillis, currentTime);
+                secondsString(boundaryLocalMillis, nextTime);
+            } else {
+                length = hourMinString(previousLocalMillis, currentTime);
+                hourMinString(boundaryLocalMillis, nextTime);
+            }
+
+            // same as updateGlyphsAndAnimDuration; the last glyph to change animates first
+            int animatedGlyphCount = 0;
+            for (int i = length - 1; i >= 0; i--) {
+                if (currentTime[i] != ':' && currentTime[i] != nextTime[i]) {
+                    animatedGlyphIndices[animatedGlyphCount++] = i;
+                }
+            }
+
+            if (animatedGlyphCount > 0) {
+                long animDuration = animatedGlyphCount * mOptions.glyphAnimAverageDelay
+                        + mOptions.glyphAnimDuration;
+                long startMillis = boundaryMillis - animDuration;
+                if (startMillis < toMillis && boundaryMillis > fromMillis) {
+                    out.add(new AnimationTimeline.Window(this, startMillis, boundaryMillis,
+                            Arrays.copyOf(animatedGlyphIndices, animatedGlyphCount)));
+                }
             }
-        }, allowAnimate, new RectF());
+
+            boundaryMillis += periodMillis;
+        }
+    }
+
+    public PointF measure(boolean allowAnimate) {
+        updateLayout(allowAnimate);
+        mMeasuredSize.set(mLayout.measuredWidth, mLayout.measuredHeight);
         return mMeasuredSize;
     }
 
-    private void layoutPass(LayoutPassCallback cb, boolean allowAnimate, RectF rectF) {
-        float x = 0;
+    /**
+     * Returns whether any glyph is currently mid-transition, in which case the next frame may
+     * look different from this one.
+     */
+    public boolean isAnimating(boolean allowAnimate) {
+        updateLayout(allowAnimate);
+        for (int i = 0; i < mLayout.glyphCount; i++) {
+            if (mLayout.progress[i] != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a number that changes whenever the glyph layout changes. Callers that cache drawn
+     * glyphs can use this to tell when they need to redraw them.
+     */
+    public int getLayoutGeneration() {
+        return mLayout.generation;
+    }
+
+    /**
+     * Returns the batch that direct draws go through, or null before the first batched draw.
+     */
+    GlyphBatch getGlyphBatch() {
+        return mGlyphBatch;
+    }
+
+    /**
+     * Recomputes {@link #mLayout} unless it was already computed for the current glyphs,
+     * animation time and options.
+     */
+    private void updateLayout(boolean allowAnimate) {
+        Layout layout = mLayout;
+        if (layout.isValidFor(this, allowAnimate)) {
+            return;
+        }
 
+        layout.valid = true;
+        ++layout.generation;
+        layout.glyphCount = mGlyphCount;
+        System.arraycopy(mGlyphTransitions, 0, layout.sourceTransitions, 0, mGlyphCount);
+        layout.animatedGlyphIndexCount = mAnimatedGlyphIndexCount;
+        System.arraycopy(mAnimatedGlyphIndices, 0, layout.animatedGlyphIndices, 0,
+                mAnimatedGlyphIndexCount);
+        layout.animTime = mAnimTime;
+        layout.animDuration = mAnimDuration;
+        layout.allowAnimate = allowAnimate;
+        layout.textSize = mOptions.textSize;
+        layout.charSpacing = mOptions.charSpacing;
+
+        computeGlyphAnimProgress(mTempGlyphAnimProgress);
+
+        float x = 0;
+        layout.measuredWidth = 0;
+        layout.measuredHeight = 0;
         for (int i = 0; i < mGlyphCount; i++) {
-            Glyph glyph = mGlyphs[i];
+            int transition = mGlyphTransitions[i];
+            Glyph glyph = mFont.getGlyph(transition);
 
-            float t = getGlyphAnimProgress(i);
+            float t = mTempGlyphAnimProgress[i];
             if (!allowAnimate && t > 0f) {
                 t = 1;
             }
             float glyphWidth = glyph.getWidthAtProgress(t) * mOptions.textSize / Font.DRAWHEIGHT;
 
-            rectF.set(x, 0, x + glyphWidth, mOptions.textSize);
-            cb.visitGlyph(glyph, t, rectF);
+            layout.left[i] = x;
+            layout.width[i] = glyphWidth;
+            layout.measuredWidth = Math.max(layout.measuredWidth, x + glyphWidth);
+            layout.measuredHeight = mOptions.textSize;
+
+            // resolve the glyph to draw; settled glyphs are drawn as their canonical glyph at t=0
+            int settledChar = -1;
+            if (t == 0) {
+                settledChar = mFont.getCanonicalStartChar(transition);
+            } else if (!allowAnimate || t == 1) {
+                settledChar = mFont.getCanonicalEndChar(transition);
+                t = 0;
+            }
+            layout.glyphs[i] = settledChar >= 0
+                    ? mFont.getGlyph(mFont.getSettledTransition(settledChar))
+                    : glyph;
+            layout.settledChars[i] = settledChar;
+            layout.progress[i] = t;
 
-            x += Math.floor(glyphWidth +
-                    (i >= 0 ? mOptions.charSpacing : 0));
+            x += Math.floor(glyphWidth + mOptions.charSpacing);
         }
     }
 
-    public void draw(final Canvas canvas, float left, float top, final boolean allowAnimate,
-                     final boolean offscreenGlyphs) {
-        mFont.canvas = offscreenGlyphs ? mOffsGlyphCanvas : canvas;
+    public void draw(Canvas canvas, float left, float top, boolean allowAnimate,
+                     boolean offscreenGlyphs) {
+        updateLayout(allowAnimate);
+
+        if (offscreenGlyphs) {
+            obtainOffsGlyphBitmap();
+        }
+        mGlyphCanvas.canvas = offscreenGlyphs ? mOffsGlyphCanvas : canvas;
+        mGlyphCanvas.simplifyScale = (mOptions.textSize <= mOptions.maxSimplifiedTextSize
+                && !mPaints.hasStroke) ? mOptions.textSize / Font.DRAWHEIGHT : 0;
+        mGlyphCompositePaint = mOffsGlyphPaint;
+        if (offscreenGlyphs && mGlyphTint.canTint(mPaints)) {
+            // rasterize color-independent glyphs, so cached ones survive theme changes
+            mGlyphCanvas.paints = mGlyphTint.getChannelPaints(mPaints);
+            mGlyphCompositePaint = mGlyphTint.getCompositePaint(mPaints);
+        }
+        GlyphAtlas atlas = offscreenGlyphs ? obtainGlyphAtlas() : null;
+        boolean useBakedFrames = offscreenGlyphs && mFrameCache != null;
+        if (useBakedFrames) {
+            mFrameCache.validate(mOptions.textSize, mGlyphCanvas.paints);
+        }
 
         int sc = canvas.save();
         canvas.translate(left, top);
+        if (mOptions.batchDrawCalls && !offscreenGlyphs) {
+            if (mGlyphBatch == null) {
+                mGlyphBatch = new GlyphBatch();
+            }
+            mGlyphBatch.begin(canvas, mOptions.textSize / Font.DRAWHEIGHT, mPaints,
+                    mOptions.tessellateFills);
+            mGlyphCanvas.batch = mGlyphBatch;
+        }
+        for (int i = 0; i < mLayout.glyphCount; i++) {
+            mTempGlyphRectF.set(mLayout.left[i], 0,
+                    mLayout.left[i] + mLayout.width[i], mOptions.textSize);
+            drawGlyph(canvas, mLayout.glyphs[i], mLayout.settledChars[i], mLayout.progress[i],
+                    mTempGlyphRectF, offscreenGlyphs, atlas, useBakedFrames);
+        }
+        if (mGlyphCanvas.batch != null) {
+            mGlyphCanvas.batch = null;
+            mGlyphBatch.draw(canvas, mPaints);
+        }
+        canvas.restoreToCount(sc);
 
-        layoutPass(new LayoutPassCallback() {
-            @Override
-            public void visitGlyph(Glyph glyph, float glyphAnimProgress, RectF rect) {
-                int sc;
-
-                if (glyphAnimProgress == 0) {
-                    glyph = mFont.mGlyphMap.get(glyph.getCanonicalStartGlyph());
-                } else if (!allowAnimate || glyphAnimProgress == 1) {
-                    glyph = mFont.mGlyphMap.get(glyph.getCanonicalEndGlyph());
-                    glyphAnimProgress = 0;
-                }
+        mGlyphCanvas.canvas = null;
+        mGlyphCanvas.paints = mPaints;
+    }
 
-                if (offscreenGlyphs) {
-                    mOffsGlyphBitmap.eraseColor(Color.TRANSPARENT);
-                    sc = mOffsGlyphCanvas.save();
-                    mOffsGlyphCanvas.translate(
-                            mOffsGlyphBitmapUnpaddedSize / 2,
-                            mOffsGlyphBitmapUnpaddedSize / 2);
-                    mOffsGlyphCanvas.scale(
-                            mOffsGlyphBitmapUnpaddedSize * 1f / Font.DRAWHEIGHT,
-                            mOffsGlyphBitmapUnpaddedSize * 1f / Font.DRAWHEIGHT);
-                    glyph.draw(glyphAnimProgress);
-                    mOffsGlyphCanvas.restoreToCount(sc);
-                }
+    private void drawGlyph(Canvas canvas, Glyph glyph, int settledChar, float t, RectF rect,
+                           boolean offscreenGlyphs, GlyphAtlas atlas, boolean useBakedFrames) {
+        if (DEBUG_SHOW_RECTS) {
+            canvas.drawRect(rect, mDebugShowRectPaint);
+        }
 
-                if (DEBUG_SHOW_RECTS) {
-                    canvas.drawRect(rect, mDebugShowRectPaint);
-                }
+        if (atlas != null && settledChar >= 0) {
+            // settled glyph, blit its pre-rasterized copy
+            Rect cell = atlas.getCell(settledChar);
+            if (cell != null) {
+                mTempAtlasDstRectF.set(
+                        rect.left - GlyphAtlas.PADDING,
+                        rect.top - GlyphAtlas.PADDING,
+                        rect.left - GlyphAtlas.PADDING + cell.width(),
+                        rect.top - GlyphAtlas.PADDING + cell.height());
+                canvas.drawBitmap(atlas.getBitmap(), cell, mTempAtlasDstRectF,
+                        mGlyphCompositePaint);
+            }
+            return;
+        }
 
-                sc = canvas.save();
-                canvas.translate(rect.left, rect.top);
-                float scale = mOptions.textSize /
-                        (offscreenGlyphs ? mOffsGlyphBitmapUnpaddedSize : Font.DRAWHEIGHT);
-                canvas.scale(scale, scale);
-                if (offscreenGlyphs) {
-                    canvas.translate(-mOffsGlyphBitmapUnpaddedSize / 2, -mOffsGlyphBitmapUnpaddedSize / 2);
-                    canvas.drawBitmap(mOffsGlyphBitmap, 0, 0, mOffsGlyphPaint);
-                } else {
-                    glyph.draw(glyphAnimProgress); // draws into mOffsGlyphCanvas
-                }
-                canvas.restoreToCount(sc);
+        if (useBakedFrames) {
+            // transitioning glyph, blit the nearest baked frame
+            Bitmap frame = getBakedFrame(glyph, t);
+            if (frame != null) {
+                RectF bounds = glyph.getBounds();
+                canvas.drawBitmap(frame,
+                        rect.left + getBakedFrameOffset(bounds.left),
+                        rect.top + getBakedFrameOffset(bounds.top),
+                        mGlyphCompositePaint);
+                return;
             }
-        }, allowAnimate, new RectF());
+        }
+
+        if (offscreenGlyphs) {
+            drawGlyphOffscreen(glyph, t);
+        }
 
+        int sc = canvas.save();
+        canvas.translate(rect.left, rect.top);
+        if (offscreenGlyphs) {
+            drawOffscreenGlyphBitmap(canvas, mGlyphCompositePaint);
+        } else {
+            float scale = mOptions.textSize / Font.DRAWHEIGHT;
+            canvas.scale(scale, scale);
+            glyph.draw(mGlyphContext, t);
+        }
         canvas.restoreToCount(sc);
+    }
 
-        mFont.canvas = null;
+    /**
+     * Draws the given glyph into the offscreen glyph bitmap. Only the area the glyph can touch is
+     * cleared, and only that area is later composited by {@link #drawOffscreenGlyphBitmap}.
+     */
+    private void drawGlyphOffscreen(Glyph glyph, float t) {
+        // the glyph's drawing bounds, padded for anti-aliasing. Stroke widths scale with the
+        // glyph's own transforms, so with strokes the whole bitmap is used
+        int origin = mOffsGlyphBitmapUnpaddedSize / 2;
+        float scale = mOffsGlyphBitmapUnpaddedSize * 1f / Font.DRAWHEIGHT;
+        if (mGlyphCanvas.paints.hasStroke) {
+            mOffsGlyphDirtyRect.set(0, 0,
+                    mOffsGlyphBitmap.getWidth(), mOffsGlyphBitmap.getHeight());
+        } else {
+            RectF bounds = glyph.getBounds();
+            mOffsGlyphDirtyRect.set(
+                    origin + (int) Math.floor(bounds.left * scale) - OFFS_GLYPH_DIRTY_PADDING,
+                    origin + (int) Math.floor(bounds.top * scale) - OFFS_GLYPH_DIRTY_PADDING,
+                    origin + (int) Math.ceil(bounds.right * scale) + OFFS_GLYPH_DIRTY_PADDING,
+                    origin + (int) Math.ceil(bounds.bottom * scale) + OFFS_GLYPH_DIRTY_PADDING);
+            mOffsGlyphDirtyRect.intersect(0, 0,
+                    mOffsGlyphBitmap.getWidth(), mOffsGlyphBitmap.getHeight());
+        }
+
+        // also clear a 1px border, since bitmap filtering may sample just outside the dirty rect
+        int sc = mOffsGlyphCanvas.save();
+        mOffsGlyphCanvas.clipRect(
+                mOffsGlyphDirtyRect.left - 1, mOffsGlyphDirtyRect.top - 1,
+                mOffsGlyphDirtyRect.right + 1, mOffsGlyphDirtyRect.bottom + 1);
+        mOffsGlyphCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+        mOffsGlyphCanvas.restoreToCount(sc);
+
+        sc = mOffsGlyphCanvas.save();
+        mOffsGlyphCanvas.translate(origin, origin);
+        mOffsGlyphCanvas.scale(scale, scale);
+        glyph.draw(mGlyphContext, t);
+        mOffsGlyphCanvas.restoreToCount(sc);
     }
 
-    private float getGlyphAnimProgress(int glyphIndex) {
-        int indexIntoAnimatedGlyphs = -1;
-        for (int i = 0; i < mAnimatedGlyphIndexCount; i++) {
-            if (mAnimatedGlyphIndices[i] == glyphIndex) {
-                indexIntoAnimatedGlyphs = i;
-                break;
+    /**
+     * Composites the dirty area of the offscreen glyph bitmap onto the given canvas, whose origin
+     * should be the top-left of the glyph, with the given paint.
+     */
+    private void drawOffscreenGlyphBitmap(Canvas canvas, Paint paint) {
+        int sc = canvas.save();
+        float scale = mOptions.textSize / mOffsGlyphBitmapUnpaddedSize;
+        canvas.scale(scale, scale);
+        canvas.translate(-mOffsGlyphBitmapUnpaddedSize / 2, -mOffsGlyphBitmapUnpaddedSize / 2);
+        mOffsGlyphDirtyRectF.set(mOffsGlyphDirtyRect);
+        canvas.drawBitmap(mOffsGlyphBitmap, mOffsGlyphDirtyRect, mOffsGlyphDirtyRectF, paint);
+        canvas.restoreToCount(sc);
+    }
+
+    /**
+     * Returns a glyph atlas matching the current text size and glyph paints, rebuilding the least
+     * recently used one if none match. Channel-packed atlases match every fill color, so two
+     * atlases are only needed while revealing a theme with strokes.
+     */
+    private GlyphAtlas obtainGlyphAtlas() {
+        ClockPaints paints = mGlyphCanvas.paints;
+        for (int i = 0; i < mGlyphAtlases.length; i++) {
+            if (mGlyphAtlases[i] != null && mGlyphAtlases[i].matches(mOptions.textSize, paints)) {
+                mLastGlyphAtlasIndex = i;
+                return mGlyphAtlases[i];
             }
         }
 
-        if (indexIntoAnimatedGlyphs < 0) {
-            return 0; // glyphs not currently animating are rendered at t=0
+        int i = (mLastGlyphAtlasIndex + 1) % mGlyphAtlases.length;
+        if (mGlyphAtlases[i] == null) {
+            mGlyphAtlases[i] = new GlyphAtlas();
+        }
+
+        rebuildGlyphAtlas(mGlyphAtlases[i]);
+        mLastGlyphAtlasIndex = i;
+        return mGlyphAtlases[i];
+    }
+
+    /**
+     * Returns the baked frame of the given transition nearest to the given progress, baking it
+     * first if needed, or null if it can't be cached.
+     */
+    private Bitmap getBakedFrame(Glyph transition, float t) {
+        int frameIndex = mFrameCache.getFrameIndex(t);
+        Bitmap frame = mFrameCache.get(transition, frameIndex);
+        if (frame != null) {
+            return frame;
+        }
+
+        // frames cover the transition's drawing bounds, padded on every side for anti-aliasing
+        RectF bounds = transition.getBounds();
+        float scale = mOptions.textSize / Font.DRAWHEIGHT;
+        int left = getBakedFrameOffset(bounds.left);
+        int top = getBakedFrameOffset(bounds.top);
+        frame = mFrameCache.newFrame(transition, frameIndex,
+                (int) Math.ceil(bounds.right * scale) + BAKED_FRAME_PADDING - left,
+                (int) Math.ceil(bounds.bottom * scale) + BAKED_FRAME_PADDING - top);
+        if (frame == null) {
+            return null;
+        }
+
+        drawGlyphOffscreen(transition, mFrameCache.getFrameProgress(frameIndex));
+        mFrameCanvas.setBitmap(frame);
+        int sc = mFrameCanvas.save();
+        mFrameCanvas.translate(-left, -top);
+        drawOffscreenGlyphBitmap(mFrameCanvas, mOffsGlyphPaint);
+        mFrameCanvas.restoreToCount(sc);
+        mFrameCanvas.setBitmap(null);
+        return frame;
+    }
+
+    /**
+     * Returns where a baked frame starts relative to the glyph's origin, in pixels, given the
+     * left or top edge of the glyph's bounds.
+     */
+    private int getBakedFrameOffset(float boundsEdge) {
+        return (int) Math.floor(boundsEdge * mOptions.textSize / Font.DRAWHEIGHT)
+                - BAKED_FRAME_PADDING;
+    }
+
+    private void rebuildGlyphAtlas(GlyphAtlas atlas) {
+        for (int i = 0; i < GlyphAtlas.GLYPHS.length(); i++) {
+            Glyph glyph = mFont.getGlyph(mFont.getSettledTransition(i));
+            mTempAtlasCellWidths[i] = (int) Math.ceil(
+                    glyph.getWidthAtProgress(0) * mOptions.textSize / Font.DRAWHEIGHT)
+                    + 2 * GlyphAtlas.PADDING;
         }
 
-        // this glyph is animating
-        float glyphStartAnimTime = 0;
-        if (mAnimatedGlyphIndexCount > 1) {
-            glyphStartAnimTime = interpolate(accelerate5(
-                            indexIntoAnimatedGlyphs * 1f / (mAnimatedGlyphIndexCount - 1)),
-                    0, mAnimDuration - mOptions.glyphAnimDuration);
+        atlas.reset(mOptions.textSize, mGlyphCanvas.paints, mTempAtlasCellWidths,
+                (int) Math.ceil(mOptions.textSize) + 2 * GlyphAtlas.PADDING);
+
+        // rasterize through the offscreen bitmap, exactly as unsettled glyphs are drawn
+        Canvas fontCanvas = mGlyphCanvas.canvas;
+        mGlyphCanvas.canvas = mOffsGlyphCanvas;
+        Canvas atlasCanvas = atlas.getCanvas();
+        for (int i = 0; i < GlyphAtlas.GLYPHS.length(); i++) {
+            drawGlyphOffscreen(mFont.getGlyph(mFont.getSettledTransition(i)), 0);
+
+            Rect cell = atlas.getCell(i);
+            int sc = atlasCanvas.save();
+            atlasCanvas.clipRect(cell);
+            atlasCanvas.translate(cell.left + GlyphAtlas.PADDING, cell.top + GlyphAtlas.PADDING);
+            drawOffscreenGlyphBitmap(atlasCanvas, mOffsGlyphPaint);
+            atlasCanvas.restoreToCount(sc);
         }
-        return progress(mAnimTime, glyphStartAnimTime, glyphStartAnimTime
-                + mOptions.glyphAnimDuration);
+        mGlyphCanvas.canvas = fontCanvas;
     }
 
-    String secondsString(Calendar c) {
-        int s = c.get(Calendar.SECOND);
-        return ":"
-                + (s < 10 ? "0" : "")
-                + s;
+    /**
+     * Writes the current animation progress of every glyph slot into the given array. Glyphs not
+     * currently animating are at t=0.
+     */
+    private void computeGlyphAnimProgress(float[] out) {
+        float animTime = mAnimTime;
+        for (int i = 0; i < mGlyphCount; i++) {
+            float start = mGlyphAnimStartTimes[i];
+            float end = mGlyphAnimEndTimes[i];
+            if (animTime <= start) {
+                out[i] = 0;
+            } else if (animTime >= end) {
+                out[i] = 1;
+            } else {
+                out[i] = (animTime - start) / (end - start);
+            }
+        }
     }
 
-    String hourMinString(Calendar c) {
-        int h = c.get(mOptions.is24hour ? Calendar.HOUR_OF_DAY : Calendar.HOUR);
-        if (!mOptions.is24hour && h == 0) {
-            h = 12;
+    /**
+     * Writes the seconds of the given local time, e.g. ":07", into the given buffer and returns its
+     * length.
+     */
+    int secondsString(long localMillis, char[] out) {
+        int s = ClockTime.getSecond(localMillis);
+        out[0] = ':';
+        out[1] = (char) ('0' + s / 10);
+        out[2] = (char) ('0' + s % 10);
+        return 3;
+    }
+
+    /**
+     * Writes the hours and minutes of the given local time, e.g. " 9:41", into the given buffer and
+     * returns its length.
+     */
+    int hourMinString(long localMillis, char[] out) {
+        int h = ClockTime.getHourOfDay(localMillis);
+        if (!mOptions.is24hour) {
+            h %= 12;
+            if (h == 0) {
+                h = 12;
+            }
         }
-        int m = c.get(Calendar.MINUTE);
-        return (h < 10 ? " " : "")
-                + h
-                + ":" + (m < 10 ? "0" : "")
-                + m;
+        int m = ClockTime.getMinute(localMillis);
+        out[0] = (h < 10) ? ' ' : (char) ('0' + h / 10);
+        out[1] = (char) ('0' + h % 10);
+        out[2] = ':';
+        out[3] = (char) ('0' + m / 10);
+        out[4] = (char) ('0' + m % 10);
+        return 5;
     }
 
-    private interface LayoutPassCallback {
-        void visitGlyph(Glyph glyph, float glyphAnimProgress, RectF rect);
+    /**
+     * The layout of every glyph slot for a given frame: x positions, widths, and the resolved
+     * glyphs and progress values to draw. Along with the layout itself, this holds the inputs it
+     * was computed from, so that it's only recomputed when they change.
+     */
+    private static class Layout {
+        // inputs
+        int glyphCount;
+        int[] sourceTransitions = new int[20];
+        int animatedGlyphIndexCount;
+        int[] animatedGlyphIndices = new int[20];
+        long animTime;
+        long animDuration;
+        boolean allowAnimate;
+        float textSize;
+        float charSpacing;
+        boolean valid;
+
+        // outputs
+        Glyph[] glyphs = new Glyph[20];
+        int[] settledChars = new int[20]; // glyph character index, or -1 if transitioning
+        float[] progress = new float[20];
+        float[] left = new float[20];
+        float[] width = new float[20];
+        float measuredWidth;
+        float measuredHeight;
+        int generation;
+
+        boolean isValidFor(FormClockRenderer renderer, boolean allowAnimate) {
+            if (!valid
+                    || allowAnimate != this.allowAnimate
+                    || glyphCount != renderer.mGlyphCount
+                    || animatedGlyphIndexCount != renderer.mAnimatedGlyphIndexCount
+                    || animTime != renderer.mAnimTime
+                    || animDuration != renderer.mAnimDuration
+                    || textSize != renderer.mOptions.textSize
+                    || charSpacing != renderer.mOptions.charSpacing) {
+                return false;
+            }
+
+            for (int i = 0; i < glyphCount; i++) {
+                if (sourceTransitions[i] != renderer.mGlyphTransitions[i]) {
+                    return false;
+                }
+            }
+
+            for (int i = 0; i < animatedGlyphIndexCount; i++) {
+                if (animatedGlyphIndices[i] != renderer.mAnimatedGlyphIndices[i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
     }
 
     public static class Options {
@@ -338,6 +879,35 @@ public class FormClockRenderer {
         public int glyphAnimAverageDelay;
         public int glyphAnimDuration;
 
+        /**
+         * If positive, transition animations are drawn (in offscreen mode) from this many
+         * pre-rendered frames per transition instead of being drawn from scratch every frame.
+         */
+        public int bakedTransitionFrames;
+        public int bakedTransitionCacheBytes;
+
+        /**
+         * If true, glyphs drawn directly (not in offscreen mode) are gathered into a path per
+         * color and drawn with one fill and one stroke call per color (per layer, for the few
+         * shapes that must stay above an overlapped shape of another color).
+         */
+        public boolean batchDrawCalls;
+
+        /**
+         * If true, batched fills of settled glyphs are drawn as triangle meshes, with one
+         * drawVertices call per color, when the fill paints aren't anti-aliased and the canvas
+         * draws in software. Has no effect unless {@link #batchDrawCalls} is set, nor for glyphs
+         * drawn as a union outline (see {@link ClockPaints#unionOutlines}).
+         */
+        public boolean tessellateFills;
+
+        /**
+         * Text size, in pixels, at or below which glyphs are drawn with simplified geometry
+         * (dropping detail smaller than half a pixel) when the paints have no stroke. 0 always
+         * draws full detail.
+         */
+        public float maxSimplifiedTextSize;
+
         public Options() {
         }
 
@@ -348,6 +918,11 @@ public class FormClockRenderer {
             this.is24hour = copy.is24hour;
             this.glyphAnimAverageDelay = copy.glyphAnimAverageDelay;
             this.glyphAnimDuration = copy.glyphAnimDuration;
+            this.bakedTransitionFrames = copy.bakedTransitionFrames;
+            this.bakedTransitionCacheBytes = copy.bakedTransitionCacheBytes;
+            this.batchDrawCalls = copy.batchDrawCalls;
+            this.tessellateFills = copy.tessellateFills;
+            this.maxSimplifiedTextSize = copy.maxSimplifiedTextSize;
         }
     }
 
@@ -356,1199 +931,469 @@ public class FormClockRenderer {
         public Paint strokes[] = new Paint[3]; // optional
         public Paint date;
         public boolean hasStroke = false;
+
+        /**
+         * If true (and hasStroke is), settled glyphs are drawn as a single outline, the union of
+         * their shapes, filled with fills[0] and stroked with strokes[0], so that overlapping
+         * shapes don't leave stroke seams inside the glyph. Needs API 19; ignored before that.
+         */
+        public boolean unionOutlines = false;
     }
 
-    public interface Glyph {
-        void draw(float t);
+    interface Glyph {
+        void draw(GlyphContext context, float t);
         float getWidthAtProgress(float t);
+
+        /**
+         * Returns an upper bound on the width at any progress. This is the layout width; see
+         * {@link #getBounds} for where the glyph actually draws.
+         */
+        float getMaxWidth();
+
+        /**
+         * Returns bounds, in glyph units, containing every shape the glyph draws at any progress,
+         * not counting strokes. Glyphs may draw past their width, left of 0 and below
+         * DRAWHEIGHT. The returned rect must not be modified.
+         */
+        RectF getBounds();
+
         String getCanonicalStartGlyph();
         String getCanonicalEndGlyph();
     }
 
     /**
-     * Font data and common drawing operations.
+     * Font data: the glyph for every transition. Glyphs are stateless, so one font is built per
+     * process and shared by every renderer, each drawing through its own {@link GlyphContext}.
      */
-    private class Font {
-        private static final int DRAWHEIGHT = 144;
+    static class Font {
+        static final int DRAWHEIGHT = 144;
 
         private static final int COLOR_1 = 0;
         private static final int COLOR_2 = 1;
         private static final int COLOR_3 = 2;
 
-        private Map<String, Glyph> mGlyphMap = new HashMap<>();
-
-        public Canvas canvas;
-        private Path path = new Path();
+        // every character that has glyphs; the atlas glyphs come first so that they share indices
+        private static final String GLYPH_CHARS = GlyphAtlas.GLYPHS + " ";
+        private static final String FALLBACK_GLYPH = "0_1";
+
+        // glyph widths are looked up in tables of this many linear segments. Linear interpolation
+        // is off by at most h^2/8 * max|w''| for segment length h; over every transition in the
+        // default glyph set the measured error is 0.083 units (of DRAWHEIGHT), i.e. 0.04px at a
+        // 72px text size, within WIDTH_TABLE_MAX_ERROR (0.05px at that size). GlyphWidthTableTest
+        // checks every glyph against this bound
+        private static final int WIDTH_TABLE_INTERVALS = 256;
+        static final float WIDTH_TABLE_MAX_ERROR = 0.1f;
+
+        // glyph bounds are the union of the recorded shapes at this many evenly spaced progress
+        // values plus one, grown by BOUNDS_MARGIN for extremes that fall between samples; over
+        // the default glyph set, sampling misses at most 0.12 units. GlyphBoundsTest checks every
+        // glyph against its bounds
+        private static final int BOUNDS_INTERVALS = 32;
+        static final float BOUNDS_MARGIN = 0.5f;
+
+        // glyphs and their canonical start and end characters, indexed by transition, which is
+        // (from character index * character count + to character index). A settled glyph is the
+        // transition from a character to itself.
+        private int mCharCount = GLYPH_CHARS.length();
+        private Glyph[] mGlyphTable = new Glyph[mCharCount * mCharCount];
+        private int[] mCanonicalStartChars = new int[mCharCount * mCharCount];
+        private int[] mCanonicalEndChars = new int[mCharCount * mCharCount];
+        private int mMaxVarCount;
+
+        private static Font sDefault;
+
+        /**
+         * Returns the font built from the default glyph set, building it the first time.
+         */
+        public static synchronized Font getDefault(Context context) {
+            if (sDefault == null) {
+                sDefault = new Font(GlyphSet.getDefault(context));
+            }
+            return sDefault;
+        }
 
-        private RectF tempRectF = new RectF();
+        Font(GlyphSet glyphSet) {
+            Map<String, Glyph> glyphMap = new HashMap<>();
+            Glyph[] glyphs = new Glyph[glyphSet.glyphCount];
+            for (int i = 0; i < glyphs.length; i++) {
+                glyphs[i] = new ProgramGlyph(glyphSet, i);
+                glyphMap.put(glyphSet.keys[i], glyphs[i]);
+                mMaxVarCount = Math.max(mMaxVarCount, glyphSet.varCounts[i]);
+            }
+            for (int i = 0; i < glyphSet.aliasKeys.length; i++) {
+                glyphMap.put(glyphSet.aliasKeys[i], glyphs[glyphSet.aliasGlyphs[i]]);
+            }
 
-        public Font() {
-            initGlyphs();
-        }
+            for (int i = 0; i < mCharCount; i++) {
+                for (int j = 0; j < mCharCount; j++) {
+                    String key = (i == j)
+                            ? String.valueOf(GLYPH_CHARS.charAt(i))
+                            : GLYPH_CHARS.charAt(i) + "_" + GLYPH_CHARS.charAt(j);
+                    Glyph glyph = glyphMap.get(key);
+                    if (glyph == null) {
+                        glyph = glyphMap.get(FALLBACK_GLYPH);
+                    }
 
-        public Glyph getGlyph(String key) {
-            Glyph glyph = mGlyphMap.get(key);
-            if (glyph == null) { return mGlyphMap.get("0_1"); }
-            return glyph;
+                    int transition = i * mCharCount + j;
+                    mGlyphTable[transition] = glyph;
+                    mCanonicalStartChars[transition]
+                            = GLYPH_CHARS.indexOf(glyph.getCanonicalStartGlyph().charAt(0));
+                    mCanonicalEndChars[transition]
+                            = GLYPH_CHARS.indexOf(glyph.getCanonicalEndGlyph().charAt(0));
+                }
+            }
         }
 
-        private void scaleUniform(float s, float px, float py) {
-            canvas.scale(s, s, px, py);
+        private int getCharIndex(char c) {
+            if (c >= '0' && c <= '9') {
+                return c - '0';
+            } else if (c == ':') {
+                return 10;
+            } else if (c == ' ') {
+                return 11;
+            }
+            return -1;
         }
 
-        /*
-            API 21 compat methods
+        /**
+         * Returns the transition for the given pair of characters, or the fallback transition if
+         * either character has no glyphs.
          */
+        public int getTransition(char from, char to) {
+            int i = getCharIndex(from);
+            int j = getCharIndex(to);
+            if (i < 0 || j < 0) {
+                return getTransition(FALLBACK_GLYPH.charAt(0), FALLBACK_GLYPH.charAt(2));
+            }
+            return i * mCharCount + j;
+        }
 
-        private void arcTo(float l, float t, float r, float b, float startAngle, float sweepAngle, boolean forceMoveTo) {
-            tempRectF.set(l, t, r, b);
-            path.arcTo(tempRectF, startAngle, sweepAngle, forceMoveTo);
+        public int getSettledTransition(int charIndex) {
+            return charIndex * mCharCount + charIndex;
         }
 
-        private void drawArc(float l, float t, float r, float b, float startAngle, float sweepAngle, boolean useCenter, Paint paint) {
-            tempRectF.set(l, t, r, b);
-            canvas.drawArc(tempRectF, startAngle, sweepAngle, useCenter, paint);
+        public Glyph getGlyph(int transition) {
+            return mGlyphTable[transition];
         }
 
-        private void drawRoundRect(float l, float t, float r, float b, float rx, float ry, Paint paint) {
-            tempRectF.set(l, t, r, b);
-            canvas.drawRoundRect(tempRectF, rx, ry, paint);
+        public int getCanonicalStartChar(int transition) {
+            return mCanonicalStartChars[transition];
         }
 
-        private void drawOval(float l, float t, float r, float b, Paint paint) {
-            tempRectF.set(l, t, r, b);
-            canvas.drawOval(tempRectF, paint);
+        public int getCanonicalEndChar(int transition) {
+            return mCanonicalEndChars[transition];
         }
 
-        /*
-            Stroke + fill drawing wrappers
+        /**
+         * Returns a new context that can draw any of this font's glyphs.
          */
-
-        private void drawArc(float l, float t, float r, float b, float startAngle, float sweepAngle, boolean useCenter, int color) {
-            drawArc(l, t, r, b, startAngle, sweepAngle, useCenter, mPaints.fills[color]);
-            if (mPaints.hasStroke) {
-                drawArc(l, t, r, b, startAngle, sweepAngle, useCenter, mPaints.strokes[color]);
-            }
+        public GlyphContext newContext() {
+            return new GlyphContext(mMaxVarCount);
         }
 
-        private void drawRoundRect(float l, float t, float r, float b, float rx, float ry, int color) {
-            drawRoundRect(l, t, r, b, rx, ry, mPaints.fills[color]);
-            if (mPaints.hasStroke) {
-                drawRoundRect(l, t, r, b, rx, ry, mPaints.strokes[color]);
+        /**
+         * A glyph whose width and drawing are defined by bytecode in a {@link GlyphSet}.
+         */
+        static class ProgramGlyph implements Glyph {
+            private final ByteBuffer mData;
+            private final String mCanonicalStartGlyph;
+            private final String mCanonicalEndGlyph;
+            private final int mWidthOffset;
+            private final int mCodeOffset;
+            private final int mVarCount;
+
+            // recorded drawings at t=0 and t=1, recorded on first use. Other progress values are
+            // interpreted every frame: caching them at quantized progress would visibly step
+            // transitions, and GlyphFrameCache already covers quantized playback
+            private GlyphCommands[] mStaticCommands = new GlyphCommands[2];
+
+            // the width curve sampled at WIDTH_TABLE_INTERVALS + 1 evenly spaced progress values
+            private final float[] mWidthTable = new float[WIDTH_TABLE_INTERVALS + 1];
+            private final float mMaxWidth;
+
+            private final RectF mBounds = new RectF();
+
+            public ProgramGlyph(GlyphSet glyphSet, int index) {
+                mData = glyphSet.data;
+                mCanonicalStartGlyph = glyphSet.canonicalStarts[index];
+                mCanonicalEndGlyph = glyphSet.canonicalEnds[index];
+                mWidthOffset = glyphSet.widthOffsets[index];
+                mCodeOffset = glyphSet.codeOffsets[index];
+                mVarCount = glyphSet.varCounts[index];
+
+                GlyphContext context = new GlyphContext(mVarCount);
+                float maxWidth = 0;
+                for (int i = 0; i <= WIDTH_TABLE_INTERVALS; i++) {
+                    mWidthTable[i] = computeWidthAtProgress(context,
+                            i * 1f / WIDTH_TABLE_INTERVALS);
+                    maxWidth = Math.max(maxWidth, mWidthTable[i]);
+                }
+                // the curve may peak between samples by up to the table error
+                mMaxWidth = maxWidth + WIDTH_TABLE_MAX_ERROR;
+
+                computeBounds(context);
             }
-        }
 
-        private void drawOval(float l, float t, float r, float b, int color) {
-            drawOval(l, t, r, b, mPaints.fills[color]);
-            if (mPaints.hasStroke) {
-                drawOval(l, t, r, b, mPaints.strokes[color]);
+            /**
+             * Measures the bounds of every shape the glyph draws, over the layout box
+             * (0, 0, max width, DRAWHEIGHT). RectF methods aren't used, so this also works in JVM
+             * unit tests.
+             */
+            private void computeBounds(GlyphContext context) {
+                mBounds.left = mBounds.top = 0;
+                mBounds.right = mMaxWidth;
+                mBounds.bottom = DRAWHEIGHT;
+
+                GlyphCommands.Recorder recorder = new GlyphCommands.Recorder();
+                context.canvas = recorder;
+                for (int i = 0; i <= BOUNDS_INTERVALS; i++) {
+                    recorder.reset();
+                    run(context, i * 1f / BOUNDS_INTERVALS);
+                    recorder.unionBounds(mBounds);
+                }
+                context.canvas = null;
+
+                mBounds.left -= BOUNDS_MARGIN;
+                mBounds.top -= BOUNDS_MARGIN;
+                mBounds.right += BOUNDS_MARGIN;
+                mBounds.bottom += BOUNDS_MARGIN;
             }
-        }
 
-        private void drawRect(float l, float t, float r, float b, int color) {
-            canvas.drawRect(l, t, r, b, mPaints.fills[color]);
-            if (mPaints.hasStroke) {
-                canvas.drawRect(l, t, r, b, mPaints.strokes[color]);
+            @Override
+            public String getCanonicalStartGlyph() {
+                return mCanonicalStartGlyph;
             }
-        }
 
-        private void drawPath(Path path, int color) {
-            canvas.drawPath(path, mPaints.fills[color]);
-            if (mPaints.hasStroke) {
-                canvas.drawPath(path, mPaints.strokes[color]);
+            @Override
+            public String getCanonicalEndGlyph() {
+                return mCanonicalEndGlyph;
             }
-        }
-
-        private void initGlyphs() {
-            mGlyphMap.put("0_1", new Glyph() {
-                @Override
-                public String getCanonicalStartGlyph() {
-                    return "0";
-                }
-
-                @Override
-                public String getCanonicalEndGlyph() {
-                    return "1";
-                }
-
-                @Override
-                public void draw(float t) {
-                    float d1 = decelerate5(progress(t, 0, 0.5f));
-                    float d2 = decelerate5(progress(t, 0.5f, 1));
-
-                    // 0
-                    canvas.save();
-
-                    // temporarily make space for the squashed zero
-                    canvas.translate(interpolate(d1, 0, interpolate(d2, 24, 0)), 0);
-
-                    scaleUniform(interpolate(d1, 1, 2f / 3), 72, 144);
-                    scaleUniform(interpolate(d2, 1, 0.7f), 72, 96);
-                    canvas.rotate(interpolate(d1, 45, 0), 72, 72);
-
-                    float stretchX = interpolate(d1, 0, interpolate(d2, 72, -36));
-
-                    path.reset();
-                    path.moveTo(72 - stretchX, 144);
-                    arcTo(-stretchX, 0, 144 - stretchX, 144, 90, 180, true);
-                    path.lineTo(72 + stretchX, 0);
-                    path.lineTo(72 + stretchX, 144);
-                    path.lineTo(72 - stretchX, 144);
-                    path.close();
-                    drawPath(path, COLOR_2);
-
-                    path.reset();
-                    arcTo(stretchX, 0, 144 + stretchX, 144, -90, 180, true);
-                    path.close();
-                    drawPath(path, COLOR_3);
-
-                    canvas.restore();
-
-                    // 1
-                    if (d2 > 0) {
-                        drawRect(
-                                interpolate(d2, 28, 0), interpolate(d2, 72, 0), 100, interpolate(d2, 144, 48),
-                                COLOR_2);
-
-                        drawRect(28, interpolate(d2, 144, 48), 100, 144,
-                                COLOR_3);
-                    }
-                }
-
-                @Override
-                public float getWidthAtProgress(float t) {
-                    return interpolate(
-                            decelerate5(progress(t, 0.5f, 1)),
-                            interpolate(decelerate5(progress(t, 0, 0.5f)), 144, 192), 100);
-                }
-            });
-
-            mGlyphMap.put("1_2", new Glyph() {
-                @Override
-                public String getCanonicalStartGlyph() {
-                    return "1";
-                }
-
-                @Override
-                public String getCanonicalEndGlyph() {
-                    return "2";
-                }
-
-                @Override
-                public void draw(float t) {
-                    float d = 1 - decelerate5(progress(t, 0, 0.5f));
-                    float d1 = decelerate5(progress(t, 0.3f, 0.8f));
-                    float d2 = decelerate5(progress(t, 0.5f, 1.0f));
-
-                    // 2
-                    if (d1 > 0) {
-                        canvas.save();
-                        canvas.translate(interpolate(d2, 72, 0), 0);
-                        path.reset();
-                        path.moveTo(0, 144);
-                        path.lineTo(72, 72);
-                        path.lineTo(72, 144);
-                        path.lineTo(0, 144);
-                        drawPath(path, COLOR_3);
-                        canvas.restore();
-
-                        canvas.save();
-                        // TODO: interpolate colors
-                        //ctx.fillStyle = interpolateColors(d2, o.color2, o.color1);
-                        canvas.translate(108, interpolate(d1, 72, 0));
-                        //drawHorzHalfCircle(0, 0, 36, 72, true);
-                        drawArc(-36, 0, 36, 72, -90, 180, true, COLOR_1);
-                        canvas.restore();
-
-                        canvas.save();
-                        canvas.translate(0, interpolate(d1, 72, 0));
-                        drawRect(interpolate(d2, 72, 8), 0, interpolate(d2, 144, 108), 72, COLOR_1);
-                        canvas.restore();
-
-                        drawRect(72, 72, 144, 144, COLOR_2);
-                    }
-
-                    // 1
-                    if (d > 0) {
-                        canvas.save();
-                        canvas.translate(interpolate(d, 44, 0), 0);
-                        drawRect(interpolate(d, 28, 0), interpolate(d, 72, 0), 100, interpolate(d, 144, 48), COLOR_2);
-                        drawRect(28, interpolate(d, 144, 48), 100, 144, COLOR_3);
-                        canvas.restore();
-                    }
-                }
-
-                @Override
-                public float getWidthAtProgress(float t) {
-                    return interpolate(decelerate5(progress(t, 0f, 0.5f)), 100, 144);
-                }
-            });
-
-            mGlyphMap.put("2_3", new Glyph() {
-                @Override
-                public String getCanonicalStartGlyph() {
-                    return "2";
-                }
 
-                @Override
-                public String getCanonicalEndGlyph() {
-                    return "3";
-                }
-
-                @Override
-                public void draw(float t) {
-                    float d = decelerate5(progress(t, 0, 0.5f));
-                    float d1 = decelerate5(progress(t, 0.5f, 1.0f));
-
-                    // 2
-                    if (d < 1) {
-                        canvas.save();
-                        canvas.translate(interpolate(d, 0, -16), 0);
-
-                        canvas.save();
-                        canvas.translate(interpolate(d, 0, 72), 0);
-                        path.reset();
-                        path.moveTo(0, 144);
-                        path.lineTo(72, 72);
-                        path.lineTo(72, 144);
-                        path.lineTo(0, 144);
-                        drawPath(path, COLOR_3);
-                        canvas.restore();
-
-                        // TODO: interpolateColors
-                        //.fillStyle = interpolateColors(d, o.color1, o.color2);
-                        if (d == 0) {
-                            path.reset();
-                            path.moveTo(8, 0);
-                            path.lineTo(108, 0);
-                            arcTo(108 - 36, 0, 108 + 36, 72, -90, 180, true);
-                            path.lineTo(108, 72);
-                            path.lineTo(8, 72);
-                            path.lineTo(8, 0);
-                            path.close();
-                            drawPath(path, COLOR_1);
-                        } else {
-                            drawArc(108 - 36, interpolate(d, 0, 72),
-                                    108 + 36, 72 + interpolate(d, 0, 72),
-                                    -90, 180, true, COLOR_1);
-                            drawRect(interpolate(d, 8, 72), interpolate(d, 0, 72),
-                                    interpolate(d, 108, 144), interpolate(d, 72, 144), COLOR_1);
-                        }
-                        drawRect(72, 72, 144, 144, COLOR_2);
-
-                        canvas.restore();
-                    } else {
-                        // 3
-                        // half-circle
-                        canvas.save();
-                        scaleUniform(interpolate(d1, 0.7f, 1), 128, 144);
-                        drawArc(32, 48, 128, 144, -90, 180, true, COLOR_3);
-                        canvas.restore();
-
-                        // bottom rectangle
-                        drawRect(
-                                interpolate(d1, 56, 0), interpolate(d1, 72, 96),
-                                interpolate(d1, 128, 80), interpolate(d1, 144, 144), COLOR_1);
-
-                        // top part with triangle
-                        canvas.save();
-                        canvas.translate(0, interpolate(d1, 72, 0));
-                        path.reset();
-                        path.moveTo(128, 0);
-                        path.lineTo(80, 48);
-                        path.lineTo(80, 0);
-                        path.close();
-                        drawPath(path, COLOR_3);
-                        drawRect(
-                                interpolate(d1, 56, 0), 0,
-                                interpolate(d1, 128, 80), interpolate(d1, 72, 48), COLOR_3);
-                        canvas.restore();
-
-                        // middle rectangle
-                        canvas.save();
-                        drawRect(
-                                interpolate(d1, 56, 32), interpolate(d1, 72, 48),
-                                interpolate(d1, 128, 80), interpolate(d1, 144, 96), COLOR_2);
-                        canvas.restore();
-                    }
-                }
-
-                @Override
-                public float getWidthAtProgress(float t) {
-                    return interpolate(decelerate5(progress(t, 0f, 0.5f)), 144, 128);
-                }
-            });
-
-            mGlyphMap.put("3_4", new Glyph() {
-                @Override
-                public String getCanonicalStartGlyph() {
-                    return "3";
-                }
-
-                @Override
-                public String getCanonicalEndGlyph() {
-                    return "4";
-                }
-
-                @Override
-                public void draw(float t) {
-                    float d1 = 1 - decelerate5(progress(t, 0, 0.5f));
-                    float d2 = decelerate5(progress(t, 0.5f, 1));
-
-                    // 3
-                    if (d1 > 0) {
-                        canvas.save();
-                        canvas.translate(interpolate(d1, 16, 0), 0);
-
-                        // middle rectangle
-                        canvas.save();
-                        drawRect(
-                                interpolate(d1, 56, 32), interpolate(d1, 72, 48),
-                                interpolate(d1, 128, 80), interpolate(d1, 144, 96), COLOR_2);
-                        canvas.restore();
-
-                        // half-circle
-                        canvas.save();
-                        scaleUniform(interpolate(d1, 0.7f, 1), 128, 144);
-                        drawArc(32, 48, 128, 144, -90, 180, true, COLOR_3);
-                        canvas.restore();
-
-                        // bottom rectangle
-                        drawRect(
-                                interpolate(d1, 56, 0), interpolate(d1, 72, 96),
-                                interpolate(d1, 128, 80), interpolate(d1, 144, 144), COLOR_1);
-
-                        // top part with triangle
-                        canvas.save();
-                        canvas.translate(0, interpolate(d1, 72, 0));
-                        path.reset();
-                        path.moveTo(80, 0);
-                        path.lineTo(128, 0);
-                        path.lineTo(80, 48);
-                        if (d1 == 1) {
-                            path.lineTo(0, 48);
-                            path.lineTo(0, 0);
-                            path.lineTo(80, 0);
-                            path.close();
-                            drawPath(path, COLOR_3);
-                        } else {
-                            path.close();
-                            drawPath(path, COLOR_3);
-                            drawRect(
-                                    interpolate(d1, 56, 0), 0,
-                                    interpolate(d1, 128, 80), interpolate(d1, 72, 48), COLOR_3);
-                        }
-                        canvas.restore();
-
-                        canvas.restore();
-                    } else {
-                        // 4
-                        // bottom rectangle
-                        drawRect(72, interpolate(d2, 144, 108), 144, 144, COLOR_2);
-
-                        // middle rectangle
-                        drawRect(interpolate(d2, 72, 0), interpolate(d2, 144, 72), 144, interpolate(d2, 144, 108), COLOR_1);
-
-                        // triangle
-                        canvas.save();
-                        scaleUniform(d2, 144, 144);
-                        path.reset();
-                        path.moveTo(72, 72);
-                        path.lineTo(72, 0);
-                        path.lineTo(0, 72);
-                        path.lineTo(72, 72);
-                        drawPath(path, COLOR_2);
-
-                        canvas.restore();
-
-                        // top rectangle
-                        drawRect(72, interpolate(d2, 72, 0), 144, interpolate(d2, 144, 72), COLOR_3);
-                    }
-                }
-
-                @Override
-                public float getWidthAtProgress(float t) {
-                    return interpolate(decelerate5(progress(t, 0.5f, 1f)), 128, 144);
-                }
-            });
-
-            mGlyphMap.put("4_5", new Glyph() {
-                @Override
-                public String getCanonicalStartGlyph() {
-                    return "4";
-                }
-
-                @Override
-                public String getCanonicalEndGlyph() {
-                    return "5";
-                }
-
-                @Override
-                public void draw(float t) {
-                    float d = decelerate5(progress(t, 0, 0.5f));
-                    float d1 = decelerate5(progress(t, 0.5f, 1));
-
-                    // 4
-                    if (d < 1) {
-                        // bottom rectangle
-                        drawRect(interpolate(d, 72, 0), 108, interpolate(d, 144, 72), 144, COLOR_2);
-
-                        // top rectangle
-                        drawRect(interpolate(d, 72, 0), interpolate(d, 0, 72),
-                                interpolate(d, 144, 72), interpolate(d, 72, 144), COLOR_3);
-
-                        // triangle
-                        canvas.save();
-                        scaleUniform(1 - d, 0, 144);
-                        path.reset();
-                        path.moveTo(72, 72);
-                        path.lineTo(72, 0);
-                        path.lineTo(0, 72);
-                        path.lineTo(72, 72);
-                        drawPath(path, COLOR_2);
-
-                        canvas.restore();
-
-                        // middle rectangle
-                        drawRect(0, 72,
-                                interpolate(d, 144, 72), interpolate(d, 108, 144), COLOR_1);
-                    } else {
-                        // 5
-                        // wing rectangle
-                        canvas.save();
-                        drawRect(
-                                80, interpolate(d1, 72, 0),
-                                interpolate(d1, 80, 128), interpolate(d1, 144, 48), COLOR_2);
-                        canvas.restore();
-
-                        // half-circle
-                        canvas.save();
-                        scaleUniform(interpolate(d1, 0.75f, 1), 0, 144);
-                        canvas.translate(interpolate(d1, -48, 0), 0);
-                        drawArc(32, 48, 128, 144, -90, 180, true, COLOR_3);
-                        canvas.restore();
-
-                        // bottom rectangle
-                        drawRect(0, 96, 80, 144, COLOR_2);
-
-                        // middle rectangle
-                        drawRect(
-                                0, interpolate(d1, 72, 0),
-                                80, interpolate(d1, 144, 96), COLOR_1);
-                    }
-                }
-
-                @Override
-                public float getWidthAtProgress(float t) {
-                    return interpolate(decelerate5(progress(t, 0f, 0.5f)), 144, 128);
-                }
-            });
-
-            mGlyphMap.put("5_6", new Glyph() {
-                @Override
-                public String getCanonicalStartGlyph() {
-                    return "5";
-                }
-
-                @Override
-                public String getCanonicalEndGlyph() {
-                    return "6";
-                }
-
-                @Override
-                public void draw(float t) {
-                    float d = decelerate5(progress(t, 0, 0.7f));
-                    float d1 = decelerate5(progress(t, 0.1f, 1));
-
-                    // 5 (except half-circle)
-                    if (d < 1) {
-                        canvas.save();
-                        scaleUniform(interpolate(d, 1, 0.25f), 108, 96);
-
-                        // wing rectangle
-                        drawRect(80, 0, 128, 48, COLOR_2);
-
-                        // bottom rectangle
-                        drawRect(0, 96, 80, 144, COLOR_2);
-
-                        // middle rectangle
-                        drawRect(0, 0, 80, 96, COLOR_1);
-
-                        canvas.restore();
-                    }
-
-                    // half-circle
-                    canvas.save();
-
-                    canvas.rotate(interpolate(d1, 0, 90), 72, 72);
-
-                    if (d1 == 0) {
-                        drawArc(
-                                32, 48,
-                                128, 144, -90, 180, true, COLOR_3);
-                    } else {
-                        scaleUniform(interpolate(d1, 2f / 3, 1), 80, 144);
-                        canvas.translate(interpolate(d1, 8, 0), 0);
-                        drawArc(
-                                0, 0,
-                                144, 144, -90, 180, true, COLOR_3);
-                    }
-
-                    // 6 (just the parallelogram)
-                    if (d1 > 0) {
-                        canvas.save();
-                        canvas.rotate(-90, 72, 72);
-                        path.reset();
-                        path.moveTo(0, 72);
-                        path.lineTo(interpolate(d1, 0, 36), interpolate(d1, 72, 0));
-                        path.lineTo(interpolate(d1, 72, 108), interpolate(d1, 72, 0));
-                        path.lineTo(72, 72);
-                        path.lineTo(0, 72);
-                        drawPath(path, COLOR_2);
-
-                        canvas.restore();
-                    }
-
-                    canvas.restore();
-                }
-
-                @Override
-                public float getWidthAtProgress(float t) {
-                    return interpolate(decelerate5(progress(t, 0.1f, 1f)), 128, 144);
-                }
-            });
-
-            mGlyphMap.put("6_7", new Glyph() {
-                @Override
-                public String getCanonicalStartGlyph() {
-                    return "6";
-                }
-
-                @Override
-                public String getCanonicalEndGlyph() {
-                    return "7";
+            /**
+             * Looks up the width in the sampled width curve; exact at t=0 and t=1 and within
+             * {@link Font#WIDTH_TABLE_MAX_ERROR} of {@link #computeWidthAtProgress} everywhere else.
+             */
+            @Override
+            public float getWidthAtProgress(float t) {
+                if (t <= 0) {
+                    return mWidthTable[0];
+                } else if (t >= 1) {
+                    return mWidthTable[WIDTH_TABLE_INTERVALS];
                 }
 
-                @Override
-                public void draw(float t) {
-                    float d = decelerate5(t);
-
-                    // 7 rectangle
-                    drawRect(interpolate(d, 72, 0), 0, 72, 72, COLOR_3);
-
-                    // 6 circle
-                    canvas.save();
-
-                    canvas.translate(interpolate(d, 0, 36), 0);
+                float x = t * WIDTH_TABLE_INTERVALS;
+                int i = (int) x;
+                return interpolate(x - i, mWidthTable[i], mWidthTable[i + 1]);
+            }
 
-                    if (d < 1) {
-                        drawArc(0, 0, 144, 144,
-                                interpolate(d, 180, -64f),
-                                -180, true, COLOR_3);
-                    }
+            @Override
+            public float getMaxWidth() {
+                return mMaxWidth;
+            }
 
-                    // parallelogram
-                    path.reset();
-                    path.moveTo(36, 0);
-                    path.lineTo(108, 0);
-                    path.lineTo(interpolate(d, 72, 36), interpolate(d, 72, 144));
-                    path.lineTo(interpolate(d, 0, -36), interpolate(d, 72, 144));
-                    path.close();
-                    drawPath(path, COLOR_2);
+            @Override
+            public RectF getBounds() {
+                return mBounds;
+            }
 
-                    canvas.restore();
-                }
+            float computeWidthAtProgress(GlyphContext c, float t) {
+                c.vars[0] = t;
+                c.pc = mWidthOffset;
+                return eval(c);
+            }
 
-                @Override
-                public float getWidthAtProgress(float t) {
-                    return 144;
+            @Override
+            public void draw(GlyphContext c, float t) {
+                if ((t == 0 || t == 1) && c.canvas instanceof AndroidGlyphCanvas) {
+                    // recordings are drawn with Android paths, so only Android canvases use them
+                    ((AndroidGlyphCanvas) c.canvas).drawRecording(
+                            getStaticCommands((t == 0) ? 0 : 1));
+                    return;
                 }
-            });
 
-            mGlyphMap.put("7_8", new Glyph() {
-                @Override
-                public String getCanonicalStartGlyph() {
-                    return "7";
-                }
+                run(c, t);
+            }
 
-                @Override
-                public String getCanonicalEndGlyph() {
-                    return "8";
+            private synchronized GlyphCommands getStaticCommands(int i) {
+                if (mStaticCommands[i] == null) {
+                    GlyphContext context = new GlyphContext(mVarCount);
+                    GlyphCommands.Recorder recorder = new GlyphCommands.Recorder();
+                    context.canvas = recorder;
+                    run(context, i);
+                    mStaticCommands[i] = recorder.build();
                 }
+                return mStaticCommands[i];
+            }
 
-                @Override
-                public void draw(float t) {
-                    float d = decelerate5(progress(t, 0, 0.5f));
-                    float d1 = decelerate5(progress(t, 0.2f, 0.5f));
-                    float d2 = decelerate5(progress(t, 0.5f, 1));
-
-                    // 8
-                    if (d1 > 0) {
-                        if (d2 > 0) {
-                            // top
-                            canvas.save();
-                            canvas.translate(0, interpolate(d2, 96, 0));
-                            drawRoundRect(24, 0, 120, 48, 24, 24, COLOR_3);
-                            canvas.restore();
+            private void run(GlyphContext c, float t) {
+                c.vars[0] = t;
+                c.pc = mCodeOffset;
+                while (true) {
+                    byte op = mData.get(c.pc++);
+                    switch (op) {
+                        case GlyphSet.OP_END:
+                            return;
+
+                        case GlyphSet.OP_SET_VAR: {
+                            int var = mData.get(c.pc++);
+                            c.vars[var] = eval(c);
+                            break;
                         }
 
-                        // left bottom
-                        canvas.save();
-                        canvas.translate(interpolate(d1, 24, 0), 0);
-                        scaleUniform(interpolate(d2, 0.5f, 1), 48, 144);
-                        drawArc(0, 48, 96, 144, 90, 180, true, COLOR_1);
-                        canvas.restore();
-
-                        // right bottom
-                        canvas.save();
-                        canvas.translate(interpolate(d1, -24, 0), 0);
-                        scaleUniform(interpolate(d2, 0.5f, 1), 96, 144);
-                        drawArc(48, 48, 144, 144, -90, 180, true, COLOR_2);
-                        canvas.restore();
-
-                        // bottom middle
-                        canvas.save();
-                        canvas.scale(interpolate(d1, 0, 1), 1, 72, 0);
-                        drawRect(48, interpolate(d2, 96, 48), 96, 144, COLOR_1);
-                        drawRect(interpolate(d2, 48, 96), interpolate(d2, 96, 48), 96, 144, COLOR_2);
-                        canvas.restore();
-                    }
-
-                    if (d < 1) {
-                        // 7 rectangle
-                        drawRect(
-                                interpolate(d, 0, 48), interpolate(d, 0, 96),
-                                interpolate(d, 72, 96), interpolate(d, 72, 144), COLOR_3);
-
-                        // 7 parallelogram
-                        path.reset();
-                        path.moveTo(interpolate(d, 72, 48), interpolate(d, 0, 96));
-                        path.lineTo(interpolate(d, 144, 96), interpolate(d, 0, 96));
-                        path.lineTo(interpolate(d, 72, 96), 144);
-                        path.lineTo(interpolate(d, 0, 48), 144);
-                        path.close();
-                        drawPath(path, COLOR_2);
-
-                    }
-                }
-
-                @Override
-                public float getWidthAtProgress(float t) {
-                    return 144;
-                }
-            });
-
-            mGlyphMap.put("8_9", new Glyph() {
-                @Override
-                public String getCanonicalStartGlyph() {
-                    return "8";
-                }
-
-                @Override
-                public String getCanonicalEndGlyph() {
-                    return "9";
-                }
-
-                @Override
-                public void draw(float t) {
-                    float d = decelerate5(progress(t, 0, 0.5f));
-                    float d1 = decelerate5(progress(t, 0.5f, 1));
-
-                    // 8
-                    if (d < 1) {
-                        // top
-                        canvas.save();
-                        canvas.translate(0, interpolate(d, 0, 48));
-                        drawRoundRect(24, 0, 120, 48, 24, 24, COLOR_3);
-                        canvas.restore();
-
-                        if (d == 0) {
-                            // left + middle bottom
-                            canvas.save();
-                            path.reset();
-                            path.moveTo(48, 48);
-                            path.lineTo(96, 48);
-                            path.lineTo(96, 144);
-                            path.lineTo(48, 144);
-                            arcTo(0, 48, 96, 144, 90, 180, true);
-                            drawPath(path, COLOR_1);
-                            canvas.restore();
-
-                            // right bottom
-                            drawArc(48, 48, 144, 144, -90, 180, true, COLOR_2);
-                        } else {
-                            // bottom middle
-                            drawRect(interpolate(d, 48, 72) - 2, interpolate(d, 48, 0),
-                                    interpolate(d, 96, 72) + 2, 144, COLOR_1);
-
-                            // left bottom
-                            canvas.save();
-                            scaleUniform(interpolate(d, 2f/3, 1), 0, 144);
-                            drawArc(0, 0, 144, 144, 90, 180, true, COLOR_1);
-                            canvas.restore();
-
-                            // right bottom
-                            canvas.save();
-                            scaleUniform(interpolate(d, 2f/3, 1), 144, 144);
-                            drawArc(0, 0, 144, 144, -90, 180, true, COLOR_2);
-                            canvas.restore();
+                        case GlyphSet.OP_IF: {
+                            byte cmp = mData.get(c.pc++);
+                            float a = eval(c);
+                            float b = eval(c);
+                            int elseTarget = readInt(c);
+                            if (!compare(cmp, a, b)) {
+                                c.pc = mCodeOffset + elseTarget;
+                            }
+                            break;
                         }
-                    } else {
-                        // 9
-                        canvas.save();
-
-                        canvas.rotate(interpolate(d1, -90, -180), 72, 72);
-
-                        // parallelogram
-                        path.reset();
-                        path.moveTo(0, 72);
-                        path.lineTo(interpolate(d1, 0, 36), interpolate(d1, 72, 0));
-                        path.lineTo(interpolate(d1, 72, 108), interpolate(d1, 72, 0));
-                        path.lineTo(72, 72);
-                        path.lineTo(0, 72);
-                        drawPath(path, COLOR_3);
-
-                        // vanishing arc
-                        drawArc(0, 0, 144, 144,
-                                -180,
-                                interpolate(d1, 180, 0), true, COLOR_1);
-
-                        // primary arc
-                        drawArc(0, 0, 144, 144, 0, 180, true, COLOR_2);
-
-                        canvas.restore();
-                    }
-                }
-
-                @Override
-                public float getWidthAtProgress(float t) {
-                    return 144;
-                }
-            });
-
-            mGlyphMap.put("9_0", new Glyph() {
-                @Override
-                public String getCanonicalStartGlyph() {
-                    return "9";
-                }
-
-                @Override
-                public String getCanonicalEndGlyph() {
-                    return "0";
-                }
-
-                @Override
-                public void draw(float t) {
-                    float d = decelerate5(t);
-
-                    // 9
-                    canvas.save();
-
-                    canvas.rotate(interpolate(d, -180, -225), 72, 72);
-
-                    // parallelogram
-                    canvas.save();
-                    path.reset();
-                    path.moveTo(0, 72);
-                    path.lineTo(interpolate(d, 36, 0), interpolate(d, 0, 72));
-                    path.lineTo(interpolate(d, 108, 72), interpolate(d, 0, 72));
-                    path.lineTo(72, 72);
-                    path.lineTo(0, 72);
-                    drawPath(path, COLOR_3);
-
-                    canvas.restore();
-
-                    // TODO: interpolate colors
-                    //ctx.fillStyle = interpolateColors(d, COLOR_1, COLOR_3);
-                    drawArc(0, 0, 144, 144,
-                            0, interpolate(d, 0, -180), true, COLOR_3);
-
-                    drawArc(0, 0, 144, 144, 0, 180, true, COLOR_2);
-
-                    canvas.restore();
-                }
-
-                @Override
-                public float getWidthAtProgress(float t) {
-                    return 144;
-                }
-            });
-
-            mGlyphMap.put(" _1", new Glyph() {
-                @Override
-                public String getCanonicalStartGlyph() {
-                    return " ";
-                }
-
-                @Override
-                public String getCanonicalEndGlyph() {
-                    return "1";
-                }
 
-                @Override
-                public void draw(float t) {
-                    float d1 = decelerate5(progress(t, 0, 0.5f));
-                    float d2 = decelerate5(progress(t, 0.5f, 1));
+                        case GlyphSet.OP_JUMP:
+                            c.pc = mCodeOffset + readInt(c);
+                            break;
 
-                    // 1
-                    scaleUniform(interpolate(d1, 0, 1), 0, 144);
-                    drawRect(
-                            interpolate(d2, 28, 0), interpolate(d2, 72, 0),
-                            100, interpolate(d2, 144, 48), COLOR_2);
+                        case GlyphSet.OP_SAVE:
+                            c.canvas.save();
+                            break;
 
-                    if (d2 > 0) {
-                        drawRect(28, interpolate(d2, 144, 48), 100, 144, COLOR_3);
-                    }
-                }
+                        case GlyphSet.OP_RESTORE:
+                            c.canvas.restore();
+                            break;
 
-                @Override
-                public float getWidthAtProgress(float t) {
-                    return interpolate(decelerate5(progress(t, 0, 0.5f)), 0, 100);
-                }
-            });
+                        case GlyphSet.OP_TRANSLATE:
+                            c.canvas.translate(eval(c), eval(c));
+                            break;
 
-            mGlyphMap.put("1_ ", new Glyph() {
-                @Override
-                public String getCanonicalStartGlyph() {
-                    return "1";
-                }
+                        case GlyphSet.OP_ROTATE:
+                            c.canvas.rotate(eval(c), eval(c), eval(c));
+                            break;
 
-                @Override
-                public String getCanonicalEndGlyph() {
-                    return " ";
-                }
+                        case GlyphSet.OP_SCALE:
+                            c.canvas.scale(eval(c), eval(c), eval(c), eval(c));
+                            break;
 
-                @Override
-                public void draw(float t) {
-                    float d1 = decelerate5(progress(t, 0, 0.5f));
-                    float d2 = decelerate5(progress(t, 0.5f, 1));
+                        case GlyphSet.OP_PATH_RESET:
+                            c.canvas.pathReset();
+                            break;
 
-                    scaleUniform(interpolate(d2, 1, 0), 0, 144);
-                    drawRect(
-                            interpolate(d1, 0, 28), interpolate(d1, 0, 72),
-                            100, interpolate(d1, 48, 144), COLOR_2);
+                        case GlyphSet.OP_PATH_MOVE_TO:
+                            c.canvas.pathMoveTo(eval(c), eval(c));
+                            break;
 
-                    if (d1 < 1) {
-                        drawRect(28, interpolate(d1, 48, 144), 100, 144, COLOR_3);
-                    }
-                }
+                        case GlyphSet.OP_PATH_LINE_TO:
+                            c.canvas.pathLineTo(eval(c), eval(c));
+                            break;
 
-                @Override
-                public float getWidthAtProgress(float t) {
-                    return interpolate(decelerate5(progress(t, 0.5f, 1)), 100, 0);
-                }
-            });
+                        case GlyphSet.OP_PATH_ARC_TO:
+                            c.canvas.pathArcTo(eval(c), eval(c), eval(c), eval(c), eval(c), eval(c),
+                                    readBoolean(c));
+                            break;
 
-            // 24 hour only
-            mGlyphMap.put("2_ ", new Glyph() {
-                @Override
-                public String getCanonicalStartGlyph() {
-                    return "2";
-                }
+                        case GlyphSet.OP_PATH_CLOSE:
+                            c.canvas.pathClose();
+                            break;
 
-                @Override
-                public String getCanonicalEndGlyph() {
-                    return " ";
-                }
+                        case GlyphSet.OP_DRAW_RECT:
+                            c.canvas.drawRect(eval(c), eval(c), eval(c), eval(c), mData.get(c.pc++));
+                            break;
 
-                @Override
-                public void draw(float t) {
-                    float d = decelerate5(progress(t, 0, 0.5f));
-                    float d1 = decelerate5(progress(t, 0.5f, 1.0f));
-
-                    // 2
-                    canvas.save();
-                    canvas.translate(interpolate(d, 0, -72), 0);
-
-                    if (d < 1) {
-                        canvas.save();
-                        canvas.translate(interpolate(d, 0, 72), 0);
-                        path.reset();
-                        path.moveTo(0, 144);
-                        path.lineTo(72, 72);
-                        path.lineTo(72, 144);
-                        path.lineTo(0, 144);
-                        drawPath(path, COLOR_3);
-                        canvas.restore();
-
-                        canvas.save();
-                        canvas.translate(0, interpolate(d, 0, 72));
-                        canvas.translate(108, 0);
-                        drawArc(-36, 0, 36, 72, -90, 180, true, COLOR_1);
-                        canvas.restore();
-
-                        canvas.save();
-                        drawRect(interpolate(d, 8, 72), interpolate(d, 0, 72),
-                                interpolate(d, 108, 144), interpolate(d, 72, 144), COLOR_1);
-                        canvas.restore();
-                    }
+                        case GlyphSet.OP_DRAW_ARC:
+                            c.canvas.drawArc(eval(c), eval(c), eval(c), eval(c), eval(c), eval(c),
+                                    readBoolean(c), mData.get(c.pc++));
+                            break;
 
-                    canvas.save();
-                    scaleUniform(interpolate(d1, 1, 0), 72, 144);
-                    drawRect(72, 72, 144, 144, COLOR_2);
-                    canvas.restore();
+                        case GlyphSet.OP_DRAW_OVAL:
+                            c.canvas.drawOval(eval(c), eval(c), eval(c), eval(c), mData.get(c.pc++));
+                            break;
 
-                    canvas.restore();
-                }
+                        case GlyphSet.OP_DRAW_ROUND_RECT:
+                            c.canvas.drawRoundRect(eval(c), eval(c), eval(c), eval(c), eval(c), eval(c),
+                                    mData.get(c.pc++));
+                            break;
 
-                @Override
-                public float getWidthAtProgress(float t) {
-                    return interpolate(decelerate5(progress(t, 0, 0.5f)), 144,
-                            interpolate(decelerate5(progress(t, 0.5f, 1)), 72, 0));
-                }
-            });
-
-            // 24 hour only
-            mGlyphMap.put("3_0", new Glyph() {
-                @Override
-                public String getCanonicalStartGlyph() {
-                    return "3";
-                }
-
-                @Override
-                public String getCanonicalEndGlyph() {
-                    return "0";
-                }
-
-                @Override
-                public void draw(float t) {
-                    float d1 = 1 - decelerate5(progress(t, 0, 0.5f));
-                    float d2 = decelerate5(progress(t, 0.5f, 1));
-
-                    canvas.save();
-                    canvas.rotate(interpolate(d2, 0, 45), 72, 72);
-                    canvas.translate(interpolate(d1, interpolate(d2, 16, -8), 0), 0);
-
-                    if (d1 > 0) {
-                        // top part of 3 with triangle
-                        canvas.save();
-                        canvas.translate(0, interpolate(d1, 48, 0));
-                        float x = interpolate(d1, 48, 0);
-                        path.reset();
-                        path.moveTo(128 - x, 0);
-                        path.lineTo(80 - x, 48);
-                        path.lineTo(80 - x, 0);
-                        drawPath(path, COLOR_3);
-                        drawRect(interpolate(d1, 32, 0), 0, 80, 48, COLOR_3);
-                        canvas.restore();
-                    }
+                        case GlyphSet.OP_DRAW_PATH:
+                            c.canvas.drawPath(mData.get(c.pc++));
+                            break;
 
-                    // bottom rectangle in 3
-                    drawRect(
-                            interpolate(d1, interpolate(d2, 32, 80), 0), 96,
-                            80, 144, COLOR_1);
-
-                    // middle rectangle
-                    drawRect(
-                            interpolate(d2, 32, 80), 48,
-                            80, 96, COLOR_2);
-
-                    // 0
-
-                    scaleUniform(interpolate(d2, 2f/3, 1), 80, 144);
-
-                    // half-circles
-                    canvas.translate(8, 0);
-                    if (d2 > 0) {
-                        canvas.save();
-                        canvas.rotate(interpolate(d2, -180, 0), 72, 72);
-                        drawArc(
-                                0, 0,
-                                144, 144, 90, 180, true, COLOR_2);
-                        canvas.restore();
+                        default:
+                            throw new IllegalStateException("Unknown glyph op " + op);
                     }
-
-                    drawArc(
-                            0, 0,
-                            144, 144, -90, 180, true, COLOR_3);
-
-                    canvas.restore();
                 }
+            }
 
-                @Override
-                public float getWidthAtProgress(float t) {
-                    return interpolate(decelerate5(progress(t, 0, 0.5f)), 128, 144);
-                }
-            });
-
-            mGlyphMap.put("5_0", new Glyph() {
-                @Override
-                public String getCanonicalStartGlyph() {
-                    return "5";
-                }
-
-                @Override
-                public String getCanonicalEndGlyph() {
-                    return "0";
-                }
-
-                @Override
-                public void draw(float t) {
-                    float d = decelerate5(progress(t, 0, 0.5f));
-                    float d1 = decelerate5(progress(t, 0.5f, 1));
-
-                    canvas.save();
-                    canvas.rotate(interpolate(d1, 0, 45), 72, 72);
-
-                    // 5 (except half-circle)
-                    if (d < 1) {
-                        // wing rectangle
-                        canvas.save();
-                        drawRect(
-                                80, interpolate(d, 0, 48),
-                                interpolate(d, 128, 80), interpolate(d, 48, 144), COLOR_2);
-                        canvas.restore();
-
-                        // bottom rectangle
-                        drawRect(0, 96, 80, 144, COLOR_2);
-                    }
-
-                    // middle rectangle
-                    drawRect(
-                            interpolate(d1, 0, 80), interpolate(d, 0, interpolate(d1, 48, 0)),
-                            80, interpolate(d, 96, 144), COLOR_1);
-
-                    scaleUniform(interpolate(d1, 2f/3, 1), 80, 144);
-
-                    // half-circles
-                    if (d1 > 0) {
-                        canvas.save();
-                        canvas.rotate(interpolate(d1, -180, 0), 72, 72);
-                        drawArc(
-                                0, 0,
-                                144, 144, 90, 180, true, COLOR_2);
-                        canvas.restore();
+            private float eval(GlyphContext c) {
+                byte op = mData.get(c.pc++);
+                switch (op) {
+                    case GlyphSet.EXPR_CONST: {
+                        float value = mData.getFloat(c.pc);
+                        c.pc += 4;
+                        return value;
                     }
 
-                    canvas.translate(interpolate(d1, 8, 0), 0);
-                    drawArc(
-                            0, 0,
-                            144, 144, -90, 180, true, COLOR_3);
+                    case GlyphSet.EXPR_VAR:
+                        return c.vars[mData.get(c.pc++)];
 
-                    canvas.restore();
-                }
-
-                @Override
-                public float getWidthAtProgress(float t) {
-                    return interpolate(decelerate5(progress(t, 0, 0.5f)), 128, 144);
-                }
-            });
+                    case GlyphSet.EXPR_ADD:
+                        return eval(c) + eval(c);
 
-            mGlyphMap.put("2_1", new Glyph() {
-                @Override
-                public String getCanonicalStartGlyph() {
-                    return "2";
-                }
+                    case GlyphSet.EXPR_SUB:
+                        return eval(c) - eval(c);
 
-                @Override
-                public String getCanonicalEndGlyph() {
-                    return "1";
-                }
+                    case GlyphSet.EXPR_MUL:
+                        return eval(c) * eval(c);
 
-                @Override
-                public void draw(float t) {
-                    float d = decelerate5(progress(t, 0, 0.5f));
-                    float d1 = decelerate5(progress(t, 0.2f, 0.5f));
-                    float d2 = decelerate5(progress(t, 0.5f, 1));
-
-                    // 2
-                    if (d1 < 1) {
-                        canvas.save();
-                        canvas.translate(interpolate(d, 0, 28), 0);
-                        path.reset();
-                        path.moveTo(0, 144);
-                        path.lineTo(72, 72);
-                        path.lineTo(72, 144);
-                        path.lineTo(0, 144);
-                        drawPath(path, COLOR_3);
-                        canvas.restore();
-
-                        canvas.save();
-                        // TODO: interpolate colors
-                        //ctx.fillStyle = interpolateColors(d1, COLOR_1, COLOR_2);
-                        canvas.translate(interpolate(d, 108, 64), interpolate(d1, 0, 72));
-                        drawArc(-36, 0, 36, 72, -90, 180, true, COLOR_1);
-                        canvas.restore();
-
-                        canvas.save();
-                        canvas.translate(0, interpolate(d1, 0, 72));
-                        drawRect(interpolate(d, 8, 28), 0, interpolate(d, 108, 100), 72, COLOR_1);
-                        canvas.restore();
-
-                        canvas.save();
-                        canvas.translate(interpolate(d, 0, -44), 0);
-                        drawRect(72, 72, 144, 144, COLOR_2);
-                        canvas.restore();
-                    } else {
-                        // 1
-                        canvas.save();
-                        drawRect(interpolate(d2, 28, 0), interpolate(d2, 72, 0), 100, interpolate(d2, 144, 48), COLOR_2);
-
-                        drawRect(28, interpolate(d2, 144, 48), 100, 144, COLOR_3);
-                        canvas.restore();
-                    }
-                }
+                    case GlyphSet.EXPR_DIV:
+                        return eval(c) / eval(c);
 
-                @Override
-                public float getWidthAtProgress(float t) {
-                    return interpolate(decelerate5(progress(t, 0, 0.5f)), 144, 100);
-                }
-            });
+                    case GlyphSet.EXPR_NEG:
+                        return -eval(c);
 
-            mGlyphMap.put(":", new Glyph() {
-                @Override
-                public String getCanonicalStartGlyph() {
-                    return ":";
-                }
+                    case GlyphSet.EXPR_INTERPOLATE:
+                        return interpolate(eval(c), eval(c), eval(c));
 
-                @Override
-                public String getCanonicalEndGlyph() {
-                    return ":";
-                }
+                    case GlyphSet.EXPR_PROGRESS:
+                        return progress(eval(c), eval(c), eval(c));
 
-                @Override
-                public void draw(float t) {
-                    drawOval(0, 0, 48, 48, COLOR_2);
-                    drawOval(0, 96, 48, 144, COLOR_3);
-                }
+                    case GlyphSet.EXPR_DECELERATE5:
+                        return decelerate5(eval(c));
 
-                @Override
-                public float getWidthAtProgress(float t) {
-                    return 48;
-                }
-            });
+                    case GlyphSet.EXPR_ACCELERATE5:
+                        return accelerate5(eval(c));
 
-            mGlyphMap.put(" ", new Glyph() {
-                @Override
-                public String getCanonicalStartGlyph() {
-                    return " ";
+                    default:
+                        throw new IllegalStateException("Unknown glyph expression " + op);
                 }
+            }
 
-                @Override
-                public String getCanonicalEndGlyph() {
-                    return " ";
+            private boolean compare(byte cmp, float a, float b) {
+                switch (cmp) {
+                    case GlyphSet.CMP_GT:
+                        return a > b;
+                    case GlyphSet.CMP_LT:
+                        return a < b;
+                    case GlyphSet.CMP_EQ:
+                        return a == b;
+                    case GlyphSet.CMP_GE:
+                        return a >= b;
+                    case GlyphSet.CMP_LE:
+                        return a <= b;
+                    default:
+                        return a != b;
                 }
+            }
 
-                @Override
-                public void draw(float t) {
-                }
+            private int readInt(GlyphContext c) {
+                int value = mData.getInt(c.pc);
+                c.pc += 4;
+                return value;
+            }
 
-                @Override
-                public float getWidthAtProgress(float t) {
-                    return 0;
-                }
-            });
-
-            mGlyphMap.put("0", mGlyphMap.get("0_1"));
-            mGlyphMap.put("1", mGlyphMap.get("1_2"));
-            mGlyphMap.put("2", mGlyphMap.get("2_3"));
-            mGlyphMap.put("3", mGlyphMap.get("3_4"));
-            mGlyphMap.put("4", mGlyphMap.get("4_5"));
-            mGlyphMap.put("5", mGlyphMap.get("5_6"));
-            mGlyphMap.put("6", mGlyphMap.get("6_7"));
-            mGlyphMap.put("7", mGlyphMap.get("7_8"));
-            mGlyphMap.put("8", mGlyphMap.get("8_9"));
-            mGlyphMap.put("9", mGlyphMap.get("9_0"));
+            private boolean readBoolean(GlyphContext c) {
+                return mData.get(c.pc++) != 0;
+            }
         }
     }
 }
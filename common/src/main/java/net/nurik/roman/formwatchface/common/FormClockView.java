@@ -35,6 +35,7 @@ public class FormClockView extends View {
     private Handler mMainThreadHandler = new Handler();
     private FormClockRenderer mHourMinRenderer;
     private FormClockRenderer mSecondsRenderer;
+    private ClockModel mClockModel = new ClockModel();
 
     private int mWidth, mHeight;
 
@@ -86,6 +87,9 @@ public class FormClockView extends View {
         mSecondsOptions.textSize /= 2;
         mSecondsOptions.glyphAnimAverageDelay = 0;
         mSecondsOptions.glyphAnimDuration = 750;
+        // like on the watch face, only the seconds, at half the size, get simplified glyphs,
+        // whatever text size the view is given
+        mSecondsOptions.maxSimplifiedTextSize = mSecondsOptions.textSize;
 
         mColor1 = a.getColor(R.styleable.FormClockView_color1, 0xff000000);
         mColor2 = a.getColor(R.styleable.FormClockView_color2, 0xff888888);
@@ -97,11 +101,28 @@ public class FormClockView extends View {
     }
 
     private void regenerateRenderers() {
-        mHourMinRenderer = new FormClockRenderer(mHourMinOptions, null);
-        mSecondsRenderer = new FormClockRenderer(mSecondsOptions, null);
+        releaseRenderers();
+        mHourMinRenderer = new FormClockRenderer(getContext(), mHourMinOptions, null);
+        mSecondsRenderer = new FormClockRenderer(getContext(), mSecondsOptions, null);
+        mHourMinRenderer.setClockModel(mClockModel);
+        mSecondsRenderer.setClockModel(mClockModel);
         updatePaints();
     }
 
+    /**
+     * Returns the renderers' offscreen bitmaps to the shared pool. The renderers stay usable and
+     * take bitmaps from the pool again if they need them.
+     */
+    private void releaseRenderers() {
+        if (mHourMinRenderer != null) {
+            mHourMinRenderer.release();
+        }
+
+        if (mSecondsRenderer != null) {
+            mSecondsRenderer.release();
+        }
+    }
+
     private void updatePaints() {
         FormClockRenderer.ClockPaints paints = new FormClockRenderer.ClockPaints();
         Paint paint = new Paint();
@@ -130,6 +151,25 @@ public class FormClockView extends View {
         updatePaints();
     }
 
+    /**
+     * Sets where the clock gets the current time from. Defaults to {@link ClockSource#SYSTEM}.
+     */
+    public void setClockSource(ClockSource clockSource) {
+        mClockModel.setClockSource(clockSource);
+        invalidate();
+    }
+
+    /**
+     * Makes this view share the given clock model, e.g. with other clock views that are visible
+     * at the same time, so that they all show the same instant.
+     */
+    public void setClockModel(ClockModel clockModel) {
+        mClockModel = clockModel;
+        mHourMinRenderer.setClockModel(clockModel);
+        mSecondsRenderer.setClockModel(clockModel);
+        invalidate();
+    }
+
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
@@ -141,6 +181,7 @@ public class FormClockView extends View {
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
 
+        mClockModel.update(getDrawingTime());
         mHourMinRenderer.updateTime();
         PointF hourMinSize = mHourMinRenderer.measure(true);
         mHourMinRenderer.draw(canvas,
@@ -178,6 +219,7 @@ public class FormClockView extends View {
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
         unregisterSystemSettingsListener();
+        releaseRenderers();
     }
 
     private void registerSystemSettingsListener() {
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.nurik.roman.formwatchface.common;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
+
+import static net.nurik.roman.formwatchface.common.FormClockRenderer.ClockPaints;
+
+/**
+ * A single bitmap holding pre-rasterized copies of every settled glyph (a canonical glyph at
+ * t=0), laid out in a row of cells. An atlas is only valid for the text size and paint colors
+ * it was built with.
+ */
+class GlyphAtlas {
+    /**
+     * The characters whose settled glyphs the atlas holds. Cells are indexed by position in this
+     * string.
+     */
+    static final String GLYPHS = "0123456789:";
+
+    /**
+     * Transparent pixels around each glyph in its cell, to leave room for anti-aliasing.
+     */
+    static final int PADDING = 2;
+
+    private Bitmap mBitmap;
+    private Canvas mCanvas;
+    private Rect[] mCells = new Rect[GLYPHS.length()];
+
+    private float mTextSize;
+    private ClockPaintsSnapshot mPaintsSnapshot = new ClockPaintsSnapshot();
+
+    public boolean matches(float textSize, ClockPaints paints) {
+        return mBitmap != null && textSize == mTextSize && mPaintsSnapshot.matches(paints);
+    }
+
+    /**
+     * Lays out cells of the given widths (one per character in {@link #GLYPHS}) and clears the atlas
+     * bitmap, taking a bigger one from {@link GlyphBitmapPool} only if it needs to grow.
+     */
+    public void reset(float textSize, ClockPaints paints, int[] cellWidths, int cellHeight) {
+        mTextSize = textSize;
+        mPaintsSnapshot.set(paints);
+
+        int x = 0;
+        for (int i = 0; i < GLYPHS.length(); i++) {
+            Rect cell = mCells[i];
+            if (cell == null) {
+                cell = new Rect();
+                mCells[i] = cell;
+            }
+
+            cell.set(x, 0, x + cellWidths[i], cellHeight);
+            x += cellWidths[i];
+        }
+
+        if (mBitmap == null || mBitmap.getWidth() < x || mBitmap.getHeight() < cellHeight) {
+            GlyphBitmapPool.release(mBitmap);
+            mBitmap = GlyphBitmapPool.obtain(x, cellHeight);
+            mCanvas = new Canvas(mBitmap);
+        } else {
+            mBitmap.eraseColor(Color.TRANSPARENT);
+        }
+    }
+
+    /**
+     * Returns the atlas bitmap to the pool. The atlas matches nothing until it's reset again.
+     */
+    public void release() {
+        GlyphBitmapPool.release(mBitmap);
+        mBitmap = null;
+        mCanvas = null;
+        mPaintsSnapshot.clear();
+    }
+
+    public Bitmap getBitmap() {
+        return mBitmap;
+    }
+
+    public Canvas getCanvas() {
+        return mCanvas;
+    }
+
+    /**
+     * Returns the cell for the given index into {@link #GLYPHS}, or null for glyphs past the end
+     * of it (e.g. the empty space glyph), which have no cell.
+     */
+    public Rect getCell(int glyphIndex) {
+        return glyphIndex < mCells.length ? mCells[glyphIndex] : null;
+    }
+}
@@ -0,0 +1,368 @@
+/*
+ * Copyright 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.nurik.roman.formwatchface.common;
+
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static net.nurik.roman.formwatchface.common.FormClockRenderer.ClockPaints;
+
+/**
+ * Gathers the shapes of every glyph in a frame into one path per color, so that a frame takes
+ * one fill and one stroke draw call per color instead of one or two per shape.
+ *
+ * <p>Drawing a color's path at once changes the order shapes are layered in, so shapes are
+ * split into as few layers as keep the result identical: a shape joins the layer of an earlier
+ * shape it may overlap only if that shape's color is drawn first within a layer. Overlap is
+ * judged by bounds padded for anti-aliasing and strokes. Glyphs sit side by side, so shapes of
+ * different glyphs don't conflict, and a frame of settled glyphs needs only a layer or two.
+ *
+ * <p>A shape the glyph drew scaled (e.g. the shrinking parts of a transition) needs its stroke
+ * scaled too, so it can't share the color's stroke path; such strokes are drawn one by one
+ * after it.
+ *
+ * <p>When tessellating, fills of shapes that come with a {@link GlyphMesh} are gathered into one
+ * triangle mesh per color instead, drawn with {@link Canvas#drawVertices}, which skips path
+ * tessellation when drawing. Meshes aren't anti-aliased, so this is only done for fill paints
+ * that aren't either, e.g. in low-bit ambient mode, and only in software, as hardware canvases
+ * ignore drawVertices before API 29.
+ */
+class GlyphBatch {
+    private static final int COLOR_COUNT = 3;
+
+    /**
+     * Stroke scales this close to 1 are drawn with the color's shared stroke path.
+     */
+    private static final float UNIT_STROKE_SCALE_TOLERANCE = 1e-4f;
+
+    // per layer: fill paths for each color, followed by stroke paths for each color
+    private List<Path[]> mLayers = new ArrayList<>();
+    private List<Mesh[]> mLayerMeshes = new ArrayList<>();
+    private int mLayerCount;
+
+    // strokes that need their own scale, in order, and the layer, color and scale of each
+    private List<Path> mScaledStrokes = new ArrayList<>();
+    private int[] mScaledStrokeLayers = new int[8];
+    private int[] mScaledStrokeColors = new int[8];
+    private float[] mScaledStrokeScales = new float[8];
+    private int mScaledStrokeCount;
+
+    // padded bounds (in batch coordinates), color and layer of each shape in the batch
+    private float[] mShapeBounds = new float[4 * 32];
+    private int[] mShapeColors = new int[32];
+    private int[] mShapeLayers = new int[32];
+    private int mShapeCount;
+
+    private ClockPaints mPaints;
+    private float mScale;
+    private float mHalfStrokeWidth;
+    private boolean mTessellating;
+    private Matrix mBaseInverse = new Matrix();
+    private Matrix mTempMatrix = new Matrix();
+    private float[] mTempValues = new float[9];
+    private RectF mTempRectF = new RectF();
+    private Path mTempPath = new Path();
+
+    /**
+     * Starts a new batch in the canvas's current coordinate system, scaled by the given factor.
+     * Scaling to glyph units keeps stroke widths the same as when glyphs draw themselves. If
+     * tessellate is set, fills are drawn as meshes whenever the paints and canvas allow it.
+     */
+    public void begin(Canvas canvas, float scale, ClockPaints paints, boolean tessellate) {
+        mPaints = paints;
+        mScale = scale;
+        mTessellating = tessellate && !canvas.isHardwareAccelerated();
+        for (int i = 0; i < COLOR_COUNT && mTessellating; i++) {
+            Paint fill = paints.fills[i];
+            mTessellating = !fill.isAntiAlias() && fill.getAlpha() == 255;
+        }
+
+        canvas.getMatrix(mTempMatrix);
+        mTempMatrix.preScale(scale, scale);
+        mTempMatrix.invert(mBaseInverse);
+
+        mHalfStrokeWidth = 0;
+        if (paints.hasStroke) {
+            for (int i = 0; i < COLOR_COUNT; i++) {
+                mHalfStrokeWidth = Math.max(mHalfStrokeWidth,
+                        paints.strokes[i].getStrokeWidth() / 2);
+            }
+        }
+
+        for (int i = 0; i < mLayerCount; i++) {
+            Path[] layer = mLayers.get(i);
+            for (int c = 0; c < 2 * COLOR_COUNT; c++) {
+                layer[c].rewind();
+            }
+            Mesh[] meshes = mLayerMeshes.get(i);
+            for (int c = 0; c < COLOR_COUNT; c++) {
+                meshes[c].clear();
+            }
+        }
+        mLayerCount = 0;
+        mShapeCount = 0;
+        mScaledStrokeCount = 0;
+    }
+
+    /**
+     * Adds a shape drawn under the canvas's current transform.
+     */
+    public void add(Canvas canvas, Path shape, int color) {
+        add(canvas, shape, 1, color);
+    }
+
+    /**
+     * Returns the paints the batch began with.
+     */
+    public ClockPaints getPaints() {
+        return mPaints;
+    }
+
+    /**
+     * Returns whether shapes' fills are drawn as meshes, when the shapes come with one.
+     */
+    public boolean isTessellating() {
+        return mTessellating;
+    }
+
+    /**
+     * Returns how many pixels a unit in the canvas's current coordinate system spans.
+     */
+    public float getPixelScale(Canvas canvas) {
+        canvas.getMatrix(mTempMatrix);
+        mTempMatrix.getValues(mTempValues);
+        float[] v = mTempValues;
+        return (float) Math.sqrt(Math.abs(
+                v[Matrix.MSCALE_X] * v[Matrix.MSCALE_Y] - v[Matrix.MSKEW_X] * v[Matrix.MSKEW_Y]));
+    }
+
+    /**
+     * Adds a shape drawn under the canvas's current transform, whose stroke should be scaled by
+     * the given factor on top of that transform.
+     */
+    public void add(Canvas canvas, Path shape, float strokeScale, int color) {
+        add(canvas, shape, strokeScale, color, null, 0);
+    }
+
+    /**
+     * Like {@link #add(Canvas, Path, float, int)}, but also takes the shape's triangles, as the
+     * given command of a mesh in the same coordinates as the shape. The mesh may be null.
+     */
+    public void add(Canvas canvas, Path shape, float strokeScale, int color, GlyphMesh mesh,
+                    int command) {
+        canvas.getMatrix(mTempMatrix);
+        mTempMatrix.postConcat(mBaseInverse);
+        mTempMatrix.getValues(mTempValues);
+        float[] v = mTempValues;
+        strokeScale *= (float) Math.sqrt(Math.abs(
+                v[Matrix.MSCALE_X] * v[Matrix.MSCALE_Y] - v[Matrix.MSKEW_X] * v[Matrix.MSKEW_Y]));
+
+        shape.transform(mTempMatrix, mTempPath);
+        mTempPath.computeBounds(mTempRectF, true);
+
+        // a pixel for anti-aliasing, plus half the widest stroke
+        float padding = 1 / mScale + mHalfStrokeWidth * strokeScale;
+        mTempRectF.inset(-padding, -padding);
+
+        // the lowest layer that keeps this shape above every earlier shape it may overlap
+        int layer = 0;
+        for (int i = 0; i < mShapeCount; i++) {
+            if (mShapeLayers[i] + 1 > layer && intersects(i, mTempRectF)) {
+                layer = (mShapeColors[i] < color) ? mShapeLayers[i] : mShapeLayers[i] + 1;
+            }
+        }
+
+        addShapeBounds(mTempRectF, color, layer);
+        Path[] paths = obtainLayer(layer);
+        if (mesh == null || !mLayerMeshes.get(layer)[color].add(mesh, command, mTempMatrix)) {
+            paths[color].addPath(mTempPath);
+        }
+        if (Math.abs(strokeScale - 1) < UNIT_STROKE_SCALE_TOLERANCE) {
+            paths[COLOR_COUNT + color].addPath(mTempPath);
+        } else if (strokeScale != 0) {
+            mTempMatrix.setScale(1 / strokeScale, 1 / strokeScale);
+            mTempPath.transform(mTempMatrix, obtainScaledStroke(layer, color, strokeScale));
+        }
+    }
+
+    private Path obtainScaledStroke(int layer, int color, float scale) {
+        if (mScaledStrokeCount == mScaledStrokeLayers.length) {
+            int capacity = 2 * mScaledStrokeCount;
+            int[] layers = new int[capacity];
+            System.arraycopy(mScaledStrokeLayers, 0, layers, 0, mScaledStrokeCount);
+            mScaledStrokeLayers = layers;
+            int[] colors = new int[capacity];
+            System.arraycopy(mScaledStrokeColors, 0, colors, 0, mScaledStrokeCount);
+            mScaledStrokeColors = colors;
+            float[] scales = new float[capacity];
+            System.arraycopy(mScaledStrokeScales, 0, scales, 0, mScaledStrokeCount);
+            mScaledStrokeScales = scales;
+        }
+        if (mScaledStrokes.size() == mScaledStrokeCount) {
+            mScaledStrokes.add(new Path());
+        }
+
+        mScaledStrokeLayers[mScaledStrokeCount] = layer;
+        mScaledStrokeColors[mScaledStrokeCount] = color;
+        mScaledStrokeScales[mScaledStrokeCount] = scale;
+        return mScaledStrokes.get(mScaledStrokeCount++);
+    }
+
+    private boolean intersects(int shape, RectF r) {
+        int i = 4 * shape;
+        return r.left < mShapeBounds[i + 2] && mShapeBounds[i] < r.right
+                && r.top < mShapeBounds[i + 3] && mShapeBounds[i + 1] < r.bottom;
+    }
+
+    private void addShapeBounds(RectF bounds, int color, int layer) {
+        if (mShapeCount == mShapeColors.length) {
+            int capacity = 2 * mShapeCount;
+            float[] shapeBounds = new float[4 * capacity];
+            System.arraycopy(mShapeBounds, 0, shapeBounds, 0, mShapeBounds.length);
+            mShapeBounds = shapeBounds;
+            int[] shapeColors = new int[capacity];
+            System.arraycopy(mShapeColors, 0, shapeColors, 0, mShapeCount);
+            mShapeColors = shapeColors;
+            int[] shapeLayers = new int[capacity];
+            System.arraycopy(mShapeLayers, 0, shapeLayers, 0, mShapeCount);
+            mShapeLayers = shapeLayers;
+        }
+
+        int i = 4 * mShapeCount;
+        mShapeBounds[i] = bounds.left;
+        mShapeBounds[i + 1] = bounds.top;
+        mShapeBounds[i + 2] = bounds.right;
+        mShapeBounds[i + 3] = bounds.bottom;
+        mShapeColors[mShapeCount] = color;
+        mShapeLayers[mShapeCount] = layer;
+        ++mShapeCount;
+    }
+
+    private Path[] obtainLayer(int layer) {
+        while (mLayers.size() <= layer) {
+            Path[] paths = new Path[2 * COLOR_COUNT];
+            for (int c = 0; c < 2 * COLOR_COUNT; c++) {
+                paths[c] = new Path();
+            }
+            mLayers.add(paths);
+            Mesh[] meshes = new Mesh[COLOR_COUNT];
+            for (int c = 0; c < COLOR_COUNT; c++) {
+                meshes[c] = new Mesh();
+            }
+            mLayerMeshes.add(meshes);
+        }
+        mLayerCount = Math.max(mLayerCount, layer + 1);
+        return mLayers.get(layer);
+    }
+
+    /**
+     * Draws the batch onto the canvas, which must be in the same state as when the batch began.
+     */
+    public void draw(Canvas canvas, ClockPaints paints) {
+        int sc = canvas.save();
+        canvas.scale(mScale, mScale);
+        for (int i = 0; i < mLayerCount; i++) {
+            Path[] layer = mLayers.get(i);
+            Mesh[] meshes = mLayerMeshes.get(i);
+            for (int c = 0; c < COLOR_COUNT; c++) {
+                if (!layer[c].isEmpty()) {
+                    canvas.drawPath(layer[c], paints.fills[c]);
+                }
+                meshes[c].draw(canvas, paints.fills[c]);
+                if (!paints.hasStroke) {
+                    continue;
+                }
+                if (!layer[COLOR_COUNT + c].isEmpty()) {
+                    canvas.drawPath(layer[COLOR_COUNT + c], paints.strokes[c]);
+                }
+                for (int s = 0; s < mScaledStrokeCount; s++) {
+                    if (mScaledStrokeLayers[s] == i && mScaledStrokeColors[s] == c) {
+                        int ssc = canvas.save();
+                        canvas.scale(mScaledStrokeScales[s], mScaledStrokeScales[s]);
+                        canvas.drawPath(mScaledStrokes.get(s), paints.strokes[c]);
+                        canvas.restoreToCount(ssc);
+                    }
+                }
+            }
+        }
+        canvas.restoreToCount(sc);
+    }
+
+    /**
+     * Triangles gathered from the meshes of several shapes.
+     */
+    private static class Mesh {
+        private float[] mVertices = new float[256];
+        private int mVertexCount;
+        private short[] mIndices = new short[256];
+        private int mIndexCount;
+
+        public void clear() {
+            mVertexCount = 0;
+            mIndexCount = 0;
+        }
+
+        /**
+         * Adds the given command's triangles, transformed by the given matrix. Returns false if
+         * they don't fit, as vertices are indexed with shorts.
+         */
+        public boolean add(GlyphMesh mesh, int command, Matrix matrix) {
+            int vertexCount = mesh.getVertexCount(command);
+            int indexCount = mesh.getIndexCount(command);
+            if (mVertexCount + vertexCount > Short.MAX_VALUE) {
+                return false;
+            }
+
+            if (2 * (mVertexCount + vertexCount) > mVertices.length) {
+                mVertices = Arrays.copyOf(mVertices,
+                        Math.max(2 * mVertices.length, 2 * (mVertexCount + vertexCount)));
+            }
+            if (mIndexCount + indexCount > mIndices.length) {
+                mIndices = Arrays.copyOf(mIndices,
+                        Math.max(2 * mIndices.length, mIndexCount + indexCount));
+            }
+
+            int vertexStart = mesh.getVertexStart(command);
+            matrix.mapPoints(mVertices, 2 * mVertexCount, mesh.getVertices(), 2 * vertexStart,
+                    vertexCount);
+            short[] indices = mesh.getIndices();
+            int indexStart = mesh.getIndexStart(command);
+            int offset = mVertexCount - vertexStart;
+            for (int i = 0; i < indexCount; i++) {
+                mIndices[mIndexCount + i] = (short) (indices[indexStart + i] + offset);
+            }
+            mVertexCount += vertexCount;
+            mIndexCount += indexCount;
+            return true;
+        }
+
+        public void draw(Canvas canvas, Paint paint) {
+            if (mIndexCount == 0) {
+                return;
+            }
+            canvas.drawVertices(Canvas.VertexMode.TRIANGLES, 2 * mVertexCount, mVertices, 0,
+                    null, 0, null, 0, mIndices, 0, mIndexCount, paint);
+        }
+    }
+}
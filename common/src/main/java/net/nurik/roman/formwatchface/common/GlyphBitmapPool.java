@@ -0,0 +1,169 @@
+/*
+ * Copyright 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.nurik.roman.formwatchface.common;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Build;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A process-wide pool of ARGB_8888 bitmaps for offscreen glyph rendering, shared by every
+ * {@link FormClockRenderer}. Bitmaps are allocated in size classes (byte counts of the form
+ * 4..7 &times; 2^n), so a released bitmap can be reconfigured to any size in its class, and
+ * re-creating renderers with the same sizes (e.g. on a 12/24 hour change) allocates no new pixel
+ * memory. Before API 19, which can't reconfigure bitmaps, only bitmaps of the exact size are
+ * reused.
+ */
+public class GlyphBitmapPool {
+    private static final int MIN_SIZE_CLASS = 4096;
+    private static final int MAX_STRIP_WIDTH = 2048;
+
+    /**
+     * Free bitmaps past this many bytes are dropped rather than kept for reuse. Enough to hold
+     * everything a pair of renderers releases, baked frame caches included.
+     */
+    private static final int MAX_FREE_BYTES = 8 * 1024 * 1024;
+
+    private static final List<Bitmap> sFreeBitmaps = new ArrayList<>();
+    private static long sAllocatedBytes;
+    private static long sFreeBytes;
+
+    private GlyphBitmapPool() {
+    }
+
+    /**
+     * Returns a cleared bitmap of the given size, reusing a released one of the same size class
+     * if possible.
+     */
+    static synchronized Bitmap obtain(int width, int height) {
+        int sizeClass = getSizeClass(width * height * 4);
+        boolean canReconfigure = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+        for (int i = sFreeBitmaps.size() - 1; i >= 0; i--) {
+            Bitmap bitmap = sFreeBitmaps.get(i);
+            if (canReconfigure
+                    ? getFloorSizeClass(getAllocationBytes(bitmap)) == sizeClass
+                    : bitmap.getWidth() == width && bitmap.getHeight() == height) {
+                sFreeBitmaps.remove(i);
+                sFreeBytes -= getAllocationBytes(bitmap);
+                if (canReconfigure) {
+                    reconfigure(bitmap, width, height);
+                }
+                bitmap.eraseColor(Color.TRANSPARENT);
+                return bitmap;
+            }
+        }
+
+        Bitmap bitmap;
+        if (canReconfigure) {
+            // allocate exactly the whole size class up front, so the bitmap can later be
+            // reconfigured to any size in it
+            int pixels = sizeClass / 4;
+            int stripWidth = Math.min(Integer.lowestOneBit(pixels), MAX_STRIP_WIDTH);
+            bitmap = Bitmap.createBitmap(stripWidth, pixels / stripWidth, Bitmap.Config.ARGB_8888);
+            reconfigure(bitmap, width, height);
+        } else {
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+
+        sAllocatedBytes += getAllocationBytes(bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Returns a bitmap obtained from {@link #obtain} to the pool. The caller must not use it
+     * afterwards.
+     */
+    static synchronized void release(Bitmap bitmap) {
+        if (bitmap == null) {
+            return;
+        }
+
+        int bytes = getAllocationBytes(bitmap);
+        if (sFreeBytes + bytes > MAX_FREE_BYTES) {
+            sAllocatedBytes -= bytes;
+            return;
+        }
+
+        sFreeBitmaps.add(bitmap);
+        sFreeBytes += bytes;
+    }
+
+    /**
+     * Returns the pixel memory, in bytes, of every bitmap allocated by the pool and not dropped,
+     * whether in use or free.
+     */
+    public static synchronized long getAllocatedBytes() {
+        return sAllocatedBytes;
+    }
+
+    /**
+     * Returns the pixel memory, in bytes, of the bitmaps currently free for reuse.
+     */
+    public static synchronized long getFreeBytes() {
+        return sFreeBytes;
+    }
+
+    /**
+     * Drops every free bitmap, e.g. when the watch face is destroyed.
+     */
+    public static synchronized void trim() {
+        sAllocatedBytes -= sFreeBytes;
+        sFreeBytes = 0;
+        sFreeBitmaps.clear();
+    }
+
+    /**
+     * Rounds the given byte count up to the nearest size class.
+     */
+    static int getSizeClass(int bytes) {
+        if (bytes <= MIN_SIZE_CLASS) {
+            return MIN_SIZE_CLASS;
+        }
+
+        int step = Integer.highestOneBit(bytes - 1) / 4;
+        return (bytes + step - 1) / step * step;
+    }
+
+    /**
+     * Rounds the given byte count down to the nearest size class, i.e. returns the largest size
+     * class a bitmap of that many bytes can hold.
+     */
+    static int getFloorSizeClass(int bytes) {
+        if (bytes <= MIN_SIZE_CLASS) {
+            return MIN_SIZE_CLASS;
+        }
+
+        int step = Integer.highestOneBit(bytes) / 4;
+        return bytes / step * step;
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static void reconfigure(Bitmap bitmap, int width, int height) {
+        bitmap.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static int getAllocationBytes(Bitmap bitmap) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
+                ? bitmap.getAllocationByteCount()
+                : bitmap.getByteCount();
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.nurik.roman.formwatchface.common;
+
+/**
+ * Where glyphs draw: the canvas transform, path building and shape drawing operations the glyph
+ * interpreter uses, with shapes drawn in one of the font's colors (0, 1 or 2) rather than with
+ * a paint. Path coordinates are transformed by the transform in effect when the path is drawn,
+ * just like with {@link android.graphics.Canvas}.
+ *
+ * <p>{@link AndroidGlyphCanvas} draws onto an Android canvas and is what the renderer uses.
+ * The unit tests' RasterGlyphCanvas needs nothing from Android, so glyphs can be drawn and
+ * compared against reference images off-device.
+ */
+interface GlyphCanvas {
+    void save();
+
+    void restore();
+
+    void translate(float dx, float dy);
+
+    void rotate(float degrees, float px, float py);
+
+    void scale(float sx, float sy, float px, float py);
+
+    void pathReset();
+
+    void pathMoveTo(float x, float y);
+
+    void pathLineTo(float x, float y);
+
+    void pathArcTo(float l, float t, float r, float b, float startAngle, float sweepAngle,
+                   boolean forceMoveTo);
+
+    void pathClose();
+
+    void drawRect(float l, float t, float r, float b, int color);
+
+    void drawArc(float l, float t, float r, float b, float startAngle, float sweepAngle,
+                 boolean useCenter, int color);
+
+    void drawOval(float l, float t, float r, float b, int color);
+
+    void drawRoundRect(float l, float t, float r, float b, float rx, float ry, int color);
+
+    void drawPath(int color);
+}
@@ -0,0 +1,753 @@
+/*
+ * Copyright 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.nurik.roman.formwatchface.common;
+
+import android.annotation.TargetApi;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Path;
+import android.graphics.RectF;
+import android.os.Build;
+
+import java.util.Arrays;
+
+import static net.nurik.roman.formwatchface.common.FormClockRenderer.ClockPaints;
+
+/**
+ * A recorded glyph drawing: a flat stream of shapes whose coordinates already have every
+ * transform the glyph drew them under applied, so replaying it needs no canvas save, restore
+ * or transform calls. The stream is a plain float array and can be cached or serialized as is.
+ *
+ * <p>Each command is a shape:
+ * <pre>
+ * CMD_RECT, color, stroke scale, left, top, right, bottom
+ * CMD_PATH, color, stroke scale, verbs..., VERB_END
+ * </pre>
+ * where path verbs are VERB_MOVE x y, VERB_LINE x y, VERB_CUBIC x1 y1 x2 y2 x3 y3,
+ * VERB_ARC l t r b start sweep forceMoveTo, VERB_OVAL l t r b, VERB_ROUND_RECT l t r b rx ry and
+ * VERB_CLOSE. Arcs are kept as arcs when the transform maps them onto an axis-aligned oval, and
+ * approximated with cubics otherwise.
+ *
+ * <p>The stroke scale is how much the glyph had scaled the shape's coordinate system, which is
+ * how much its stroke width must be scaled to look the same.
+ *
+ * <p>Recordings are shared by every renderer, so they're immutable once built, other than
+ * meshes and the outline, which are built lazily under the recording's lock.
+ */
+class GlyphCommands {
+    static final int CMD_RECT = 1;
+    static final int CMD_PATH = 2;
+
+    static final int VERB_END = 0;
+    static final int VERB_MOVE = 1;
+    static final int VERB_LINE = 2;
+    static final int VERB_CUBIC = 3;
+    static final int VERB_ARC = 4;
+    static final int VERB_OVAL = 5;
+    static final int VERB_ROUND_RECT = 6;
+    static final int VERB_CLOSE = 7;
+
+    // meshes and simplified copies are built for power-of-two pixel scales between these powers
+    private static final int MIN_LEVEL = -8;
+    private static final int MAX_LEVEL = 8;
+
+    private final float[] mData;
+
+    // each command's shape, built once from the stream
+    private int mCount;
+    private int[] mOffsets;
+    private int[] mColors;
+    private float[] mStrokeScales;
+    private Path[] mPaths;
+    private Path[] mStrokePaths; // shapes divided by their stroke scale, or null if it's 1
+
+    // tessellated shapes, by pixel scale level, built on first use
+    private GlyphMesh[] mMeshes = new GlyphMesh[MAX_LEVEL - MIN_LEVEL + 1];
+
+    // simplified copies, by pixel scale level, built on first use
+    private GlyphCommands[] mSimplified = new GlyphCommands[MAX_LEVEL - MIN_LEVEL + 1];
+
+    // the union of every shape, built on first use; null if it couldn't be built
+    private Path mOutline;
+    private boolean mOutlineBuilt;
+
+    private RectF mTempRectF = new RectF();
+
+    public GlyphCommands(float[] data) {
+        mData = data;
+
+        for (int pos = 0; pos < data.length; pos = skipCommand(pos)) {
+            ++mCount;
+        }
+
+        mOffsets = new int[mCount];
+        mColors = new int[mCount];
+        mStrokeScales = new float[mCount];
+        mPaths = new Path[mCount];
+        mStrokePaths = new Path[mCount];
+        Matrix strokeMatrix = new Matrix();
+        int pos = 0;
+        for (int i = 0; i < mCount; i++) {
+            mOffsets[i] = pos;
+            mColors[i] = (int) data[pos + 1];
+            mStrokeScales[i] = data[pos + 2];
+            mPaths[i] = buildPath(pos);
+            float strokeScale = mStrokeScales[i];
+            if (strokeScale != 1 && strokeScale != 0) {
+                strokeMatrix.setScale(1 / strokeScale, 1 / strokeScale);
+                mStrokePaths[i] = new Path();
+                mPaths[i].transform(strokeMatrix, mStrokePaths[i]);
+            }
+            pos = skipCommand(pos);
+        }
+    }
+
+    public float[] getData() {
+        return mData;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns the color index the given command is drawn with.
+     */
+    public int getColor(int command) {
+        return mColors[command];
+    }
+
+    /**
+     * Returns the shapes tessellated finely enough to be drawn at the given pixel scale. Meshes
+     * are built for the next power-of-two scale up, so changing sizes only builds a few.
+     */
+    public synchronized GlyphMesh getMesh(float pixelScale) {
+        int level = getLevel(pixelScale);
+        int i = level - MIN_LEVEL;
+        if (mMeshes[i] == null) {
+            mMeshes[i] = new GlyphMesh(mData, mOffsets, mCount, (float) Math.pow(2, level));
+        }
+        return mMeshes[i];
+    }
+
+    /**
+     * Returns a copy of these commands with detail that can't be seen at the given pixel scale
+     * removed; see {@link GlyphSimplifier}. Like meshes, copies are built for the next
+     * power-of-two scale up.
+     */
+    public synchronized GlyphCommands getSimplified(float pixelScale) {
+        int level = getLevel(pixelScale);
+        int i = level - MIN_LEVEL;
+        if (mSimplified[i] == null) {
+            mSimplified[i] = new GlyphCommands(new GlyphSimplifier(
+                    mData, mOffsets, mCount, (float) Math.pow(2, level)).getData());
+        }
+        return mSimplified[i];
+    }
+
+    private static int getLevel(float pixelScale) {
+        int level = (int) Math.ceil(Math.log(pixelScale) / Math.log(2));
+        return Math.max(MIN_LEVEL, Math.min(MAX_LEVEL, level));
+    }
+
+    private int skipCommand(int pos) {
+        if ((int) mData[pos] == CMD_RECT) {
+            return pos + 7;
+        }
+
+        pos += 3;
+        while (true) {
+            switch ((int) mData[pos++]) {
+                case VERB_END:
+                    return pos;
+                case VERB_MOVE:
+                case VERB_LINE:
+                    pos += 2;
+                    break;
+                case VERB_CUBIC:
+                case VERB_ROUND_RECT:
+                    pos += 6;
+                    break;
+                case VERB_ARC:
+                    pos += 7;
+                    break;
+                case VERB_OVAL:
+                    pos += 4;
+                    break;
+            }
+        }
+    }
+
+    private Path buildPath(int pos) {
+        Path path = new Path();
+        float[] d = mData;
+        if ((int) d[pos] == CMD_RECT) {
+            path.addRect(d[pos + 3], d[pos + 4], d[pos + 5], d[pos + 6], Path.Direction.CW);
+            return path;
+        }
+
+        pos += 3;
+        while (true) {
+            switch ((int) d[pos++]) {
+                case VERB_END:
+                    return path;
+                case VERB_MOVE:
+                    path.moveTo(d[pos], d[pos + 1]);
+                    pos += 2;
+                    break;
+                case VERB_LINE:
+                    path.lineTo(d[pos], d[pos + 1]);
+                    pos += 2;
+                    break;
+                case VERB_CUBIC:
+                    path.cubicTo(d[pos], d[pos + 1], d[pos + 2], d[pos + 3], d[pos + 4], d[pos + 5]);
+                    pos += 6;
+                    break;
+                case VERB_ARC:
+                    mTempRectF.set(d[pos], d[pos + 1], d[pos + 2], d[pos + 3]);
+                    path.arcTo(mTempRectF, d[pos + 4], d[pos + 5], d[pos + 6] != 0);
+                    pos += 7;
+                    break;
+                case VERB_OVAL:
+                    mTempRectF.set(d[pos], d[pos + 1], d[pos + 2], d[pos + 3]);
+                    path.addOval(mTempRectF, Path.Direction.CW);
+                    pos += 4;
+                    break;
+                case VERB_ROUND_RECT:
+                    mTempRectF.set(d[pos], d[pos + 1], d[pos + 2], d[pos + 3]);
+                    path.addRoundRect(mTempRectF, d[pos + 4], d[pos + 5], Path.Direction.CW);
+                    pos += 6;
+                    break;
+                case VERB_CLOSE:
+                    path.close();
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Returns the union of every shape, or null if it can't be computed, as Path.op needs
+     * API 19.
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    public synchronized Path getOutline() {
+        if (!mOutlineBuilt) {
+            mOutlineBuilt = true;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                Path outline = new Path();
+                boolean success = true;
+                for (int i = 0; i < mCount && success; i++) {
+                    success = outline.op(mPaths[i], Path.Op.UNION);
+                }
+                mOutline = success ? outline : null;
+            }
+        }
+        return mOutline;
+    }
+
+    private boolean shouldDrawOutline(ClockPaints paints) {
+        return paints.unionOutlines && paints.hasStroke && getOutline() != null;
+    }
+
+    /**
+     * Draws every shape with its fill, followed by its stroke if the paints have one, just like
+     * the glyph would draw itself; or, if the paints ask for union outlines, fills and strokes
+     * the outline once.
+     */
+    public void draw(Canvas canvas, ClockPaints paints) {
+        if (shouldDrawOutline(paints)) {
+            canvas.drawPath(mOutline, paints.fills[0]);
+            canvas.drawPath(mOutline, paints.strokes[0]);
+            return;
+        }
+
+        float[] d = mData;
+        for (int i = 0; i < mCount; i++) {
+            int pos = mOffsets[i];
+            int color = mColors[i];
+            boolean rect = (int) d[pos] == CMD_RECT;
+            if (rect) {
+                canvas.drawRect(d[pos + 3], d[pos + 4], d[pos + 5], d[pos + 6],
+                        paints.fills[color]);
+            } else {
+                canvas.drawPath(mPaths[i], paints.fills[color]);
+            }
+
+            if (!paints.hasStroke || mStrokeScales[i] == 0) {
+                continue;
+            }
+
+            if (mStrokePaths[i] == null) {
+                if (rect) {
+                    canvas.drawRect(d[pos + 3], d[pos + 4], d[pos + 5], d[pos + 6],
+                            paints.strokes[color]);
+                } else {
+                    canvas.drawPath(mPaths[i], paints.strokes[color]);
+                }
+            } else {
+                // rare: a shape the glyph drew scaled, whose stroke must be scaled to match
+                int sc = canvas.save();
+                canvas.scale(mStrokeScales[i], mStrokeScales[i]);
+                canvas.drawPath(mStrokePaths[i], paints.strokes[color]);
+                canvas.restoreToCount(sc);
+            }
+        }
+    }
+
+    /**
+     * Adds every shape to the given batch instead of drawing it, along with its mesh if the
+     * batch draws fills as meshes.
+     */
+    public void addTo(GlyphBatch batch, Canvas canvas) {
+        if (shouldDrawOutline(batch.getPaints())) {
+            batch.add(canvas, mOutline, 0);
+            return;
+        }
+
+        GlyphMesh mesh = batch.isTessellating() ? getMesh(batch.getPixelScale(canvas)) : null;
+        for (int i = 0; i < mCount; i++) {
+            batch.add(canvas, mPaths[i], mStrokeScales[i], mColors[i], mesh, i);
+        }
+    }
+
+    /**
+     * Records shapes as a glyph draws them, tracking the current transform itself so that it
+     * needs nothing from Android and can record off-device. Path operations are collected in
+     * local coordinates and transformed when the path is drawn, just like a canvas would.
+     */
+    static class Recorder implements GlyphCanvas {
+        // the transform, laid out like Matrix.getValues, and saved copies
+        private float[] m = {1, 0, 0, 0, 1, 0, 0, 0, 1};
+        private float[] mSavedMatrices = new float[6 * 8];
+        private int mSaveCount;
+
+        private float[] mData = new float[256];
+        private int mSize;
+
+        private float[] mPathVerbs = new float[64];
+        private int mPathSize;
+
+        public GlyphCommands build() {
+            return new GlyphCommands(Arrays.copyOf(mData, mSize));
+        }
+
+        /**
+         * Clears the recording and the transform, to record another drawing.
+         */
+        public void reset() {
+            mSize = 0;
+            mPathSize = 0;
+            mSaveCount = 0;
+            m[Matrix.MSCALE_X] = m[Matrix.MSCALE_Y] = 1;
+            m[Matrix.MSKEW_X] = m[Matrix.MSKEW_Y] = 0;
+            m[Matrix.MTRANS_X] = m[Matrix.MTRANS_Y] = 0;
+        }
+
+        /**
+         * Grows the given bounds to contain every shape recorded so far, not counting strokes.
+         * Cubics are bounded by their control points, so the bounds may be slightly loose.
+         */
+        public void unionBounds(RectF bounds) {
+            float[] d = mData;
+            for (int pos = 0; pos < mSize; ) {
+                if ((int) d[pos] == CMD_RECT) {
+                    unionPoint(bounds, d[pos + 3], d[pos + 4]);
+                    unionPoint(bounds, d[pos + 5], d[pos + 6]);
+                    pos += 7;
+                    continue;
+                }
+
+                pos += 3;
+                int verb;
+                while ((verb = (int) d[pos++]) != VERB_END) {
+                    switch (verb) {
+                        case VERB_MOVE:
+                        case VERB_LINE:
+                            unionPoint(bounds, d[pos], d[pos + 1]);
+                            pos += 2;
+                            break;
+                        case VERB_CUBIC:
+                            for (int i = 0; i < 6; i += 2) {
+                                unionPoint(bounds, d[pos + i], d[pos + i + 1]);
+                            }
+                            pos += 6;
+                            break;
+                        case VERB_ARC:
+                            unionArc(bounds, d[pos], d[pos + 1], d[pos + 2], d[pos + 3],
+                                    d[pos + 4], d[pos + 5]);
+                            pos += 7;
+                            break;
+                        case VERB_OVAL:
+                        case VERB_ROUND_RECT:
+                            unionPoint(bounds, d[pos], d[pos + 1]);
+                            unionPoint(bounds, d[pos + 2], d[pos + 3]);
+                            pos += (verb == VERB_OVAL) ? 4 : 6;
+                            break;
+                    }
+                }
+            }
+        }
+
+        private static void unionArc(RectF bounds, float l, float t, float r, float b,
+                                     float startAngle, float sweepAngle) {
+            // the arc's ends, and wherever it crosses an axis of its oval in between
+            float cx = (l + r) / 2, cy = (t + b) / 2, rx = (r - l) / 2, ry = (b - t) / 2;
+            float start = Math.min(startAngle, startAngle + sweepAngle);
+            float end = Math.max(startAngle, startAngle + sweepAngle);
+            unionAnglePoint(bounds, cx, cy, rx, ry, start);
+            unionAnglePoint(bounds, cx, cy, rx, ry, end);
+            for (float a = (float) Math.ceil(start / 90) * 90; a < end; a += 90) {
+                unionAnglePoint(bounds, cx, cy, rx, ry, a);
+            }
+        }
+
+        private static void unionAnglePoint(RectF bounds, float cx, float cy, float rx, float ry,
+                                            float degrees) {
+            double a = Math.toRadians(degrees);
+            unionPoint(bounds, cx + rx * (float) Math.cos(a), cy + ry * (float) Math.sin(a));
+        }
+
+        private static void unionPoint(RectF bounds, float x, float y) {
+            // RectF's own methods aren't available in JVM unit tests
+            bounds.left = Math.min(bounds.left, x);
+            bounds.top = Math.min(bounds.top, y);
+            bounds.right = Math.max(bounds.right, x);
+            bounds.bottom = Math.max(bounds.bottom, y);
+        }
+
+        /*
+            Transforms, tracked in plain Java so recording needs no Android canvas
+         */
+
+        @Override
+        public void save() {
+            if (6 * mSaveCount + 6 > mSavedMatrices.length) {
+                mSavedMatrices = Arrays.copyOf(mSavedMatrices, 2 * mSavedMatrices.length);
+            }
+            System.arraycopy(m, 0, mSavedMatrices, 6 * mSaveCount, 6);
+            ++mSaveCount;
+        }
+
+        @Override
+        public void restore() {
+            if (mSaveCount > 0) {
+                --mSaveCount;
+                System.arraycopy(mSavedMatrices, 6 * mSaveCount, m, 0, 6);
+            }
+        }
+
+        @Override
+        public void translate(float dx, float dy) {
+            preConcat(1, 0, dx, 0, 1, dy);
+        }
+
+        @Override
+        public void rotate(float degrees, float px, float py) {
+            // like Skia, snap sines and cosines that are nearly zero, so that quarter turns
+            // stay axis-aligned
+            double radians = Math.toRadians(degrees);
+            float sin = snapToZero((float) Math.sin(radians));
+            float cos = snapToZero((float) Math.cos(radians));
+            translate(px, py);
+            preConcat(cos, -sin, 0, sin, cos, 0);
+            translate(-px, -py);
+        }
+
+        @Override
+        public void scale(float sx, float sy, float px, float py) {
+            translate(px, py);
+            preConcat(sx, 0, 0, 0, sy, 0);
+            translate(-px, -py);
+        }
+
+        /**
+         * Applies the given affine transform before the current one, like the Canvas methods do.
+         */
+        private void preConcat(float sx, float kx, float tx, float ky, float sy, float ty) {
+            float a = m[Matrix.MSCALE_X], b = m[Matrix.MSKEW_X];
+            float c = m[Matrix.MSKEW_Y], d = m[Matrix.MSCALE_Y];
+            m[Matrix.MSCALE_X] = a * sx + b * ky;
+            m[Matrix.MSKEW_X] = a * kx + b * sy;
+            m[Matrix.MTRANS_X] += a * tx + b * ty;
+            m[Matrix.MSKEW_Y] = c * sx + d * ky;
+            m[Matrix.MSCALE_Y] = c * kx + d * sy;
+            m[Matrix.MTRANS_Y] += c * tx + d * ty;
+        }
+
+        private static float snapToZero(float value) {
+            return (Math.abs(value) <= 1f / (1 << 12)) ? 0 : value;
+        }
+
+        /*
+            Shapes
+         */
+
+        @Override
+        public void drawRect(float l, float t, float r, float b, int color) {
+            if (isAxisAligned()) {
+                begin(CMD_RECT, color);
+                float x1 = mapX(l, t), y1 = mapY(l, t), x2 = mapX(r, b), y2 = mapY(r, b);
+                put(Math.min(x1, x2), Math.min(y1, y2), Math.max(x1, x2), Math.max(y1, y2));
+                return;
+            }
+
+            begin(CMD_PATH, color);
+            moveTo(l, t);
+            lineTo(r, t);
+            lineTo(r, b);
+            lineTo(l, b);
+            put(VERB_CLOSE);
+            put(VERB_END);
+        }
+
+        @Override
+        public void drawArc(float l, float t, float r, float b, float startAngle,
+                            float sweepAngle, boolean useCenter, int color) {
+            if (sweepAngle == 0) {
+                return; // like Canvas.drawArc, draw nothing
+            }
+
+            begin(CMD_PATH, color);
+            if (Math.abs(sweepAngle) >= 360) {
+                oval(l, t, r, b);
+            } else if (useCenter) {
+                moveTo((l + r) / 2, (t + b) / 2);
+                arcTo(l, t, r, b, startAngle, sweepAngle, false);
+                put(VERB_CLOSE);
+            } else {
+                arcTo(l, t, r, b, startAngle, sweepAngle, true);
+            }
+            put(VERB_END);
+        }
+
+        @Override
+        public void drawOval(float l, float t, float r, float b, int color) {
+            begin(CMD_PATH, color);
+            oval(l, t, r, b);
+            put(VERB_END);
+        }
+
+        @Override
+        public void drawRoundRect(float l, float t, float r, float b, float rx, float ry,
+                                  int color) {
+            begin(CMD_PATH, color);
+            if (isAxisAligned()) {
+                float x1 = mapX(l, t), y1 = mapY(l, t), x2 = mapX(r, b), y2 = mapY(r, b);
+                put(VERB_ROUND_RECT);
+                put(Math.min(x1, x2), Math.min(y1, y2), Math.max(x1, x2), Math.max(y1, y2));
+                put(Math.abs(rx * m[Matrix.MSCALE_X]), Math.abs(ry * m[Matrix.MSCALE_Y]));
+            } else {
+                moveTo(l + rx, t);
+                lineTo(r - rx, t);
+                arcTo(r - 2 * rx, t, r, t + 2 * ry, -90, 90, false);
+                lineTo(r, b - ry);
+                arcTo(r - 2 * rx, b - 2 * ry, r, b, 0, 90, false);
+                lineTo(l + rx, b);
+                arcTo(l, b - 2 * ry, l + 2 * rx, b, 90, 90, false);
+                lineTo(l, t + ry);
+                arcTo(l, t, l + 2 * rx, t + 2 * ry, 180, 90, false);
+                put(VERB_CLOSE);
+            }
+            put(VERB_END);
+        }
+
+        /*
+            Paths
+         */
+
+        @Override
+        public void pathReset() {
+            mPathSize = 0;
+        }
+
+        @Override
+        public void pathMoveTo(float x, float y) {
+            putPathVerb(VERB_MOVE, x, y, 0, 0, 0, 0, 0);
+        }
+
+        @Override
+        public void pathLineTo(float x, float y) {
+            putPathVerb(VERB_LINE, x, y, 0, 0, 0, 0, 0);
+        }
+
+        @Override
+        public void pathArcTo(float l, float t, float r, float b, float startAngle,
+                              float sweepAngle, boolean forceMoveTo) {
+            putPathVerb(VERB_ARC, l, t, r, b, startAngle, sweepAngle, forceMoveTo ? 1 : 0);
+        }
+
+        @Override
+        public void pathClose() {
+            putPathVerb(VERB_CLOSE, 0, 0, 0, 0, 0, 0, 0);
+        }
+
+        private void putPathVerb(int verb, float a, float b, float c, float d, float e, float f,
+                                 float g) {
+            if (mPathSize + 8 > mPathVerbs.length) {
+                mPathVerbs = Arrays.copyOf(mPathVerbs, 2 * mPathVerbs.length);
+            }
+            float[] v = mPathVerbs;
+            v[mPathSize] = verb;
+            v[mPathSize + 1] = a;
+            v[mPathSize + 2] = b;
+            v[mPathSize + 3] = c;
+            v[mPathSize + 4] = d;
+            v[mPathSize + 5] = e;
+            v[mPathSize + 6] = f;
+            v[mPathSize + 7] = g;
+            mPathSize += 8;
+        }
+
+        @Override
+        public void drawPath(int color) {
+            begin(CMD_PATH, color);
+            float[] v = mPathVerbs;
+            for (int i = 0; i < mPathSize; i += 8) {
+                switch ((int) v[i]) {
+                    case VERB_MOVE:
+                        moveTo(v[i + 1], v[i + 2]);
+                        break;
+                    case VERB_LINE:
+                        lineTo(v[i + 1], v[i + 2]);
+                        break;
+                    case VERB_ARC:
+                        arcTo(v[i + 1], v[i + 2], v[i + 3], v[i + 4], v[i + 5], v[i + 6],
+                                v[i + 7] != 0);
+                        break;
+                    case VERB_CLOSE:
+                        put(VERB_CLOSE);
+                        break;
+                }
+            }
+            put(VERB_END);
+        }
+
+        /*
+            Transformed output
+         */
+
+        private boolean isAxisAligned() {
+            return m[Matrix.MSKEW_X] == 0 && m[Matrix.MSKEW_Y] == 0;
+        }
+
+        private float mapX(float x, float y) {
+            return m[Matrix.MSCALE_X] * x + m[Matrix.MSKEW_X] * y + m[Matrix.MTRANS_X];
+        }
+
+        private float mapY(float x, float y) {
+            return m[Matrix.MSKEW_Y] * x + m[Matrix.MSCALE_Y] * y + m[Matrix.MTRANS_Y];
+        }
+
+        private void begin(int command, int color) {
+            float det = m[Matrix.MSCALE_X] * m[Matrix.MSCALE_Y]
+                    - m[Matrix.MSKEW_X] * m[Matrix.MSKEW_Y];
+            put(command, color, (float) Math.sqrt(Math.abs(det)));
+        }
+
+        private void moveTo(float x, float y) {
+            put(VERB_MOVE, mapX(x, y), mapY(x, y));
+        }
+
+        private void lineTo(float x, float y) {
+            put(VERB_LINE, mapX(x, y), mapY(x, y));
+        }
+
+        private void oval(float l, float t, float r, float b) {
+            float sx = m[Matrix.MSCALE_X], sy = m[Matrix.MSCALE_Y];
+            if ((isAxisAligned() && sx > 0 && sy > 0) || isCircleUnderSimilarity(l, t, r, b)) {
+                float cx = mapX((l + r) / 2, (t + b) / 2);
+                float cy = mapY((l + r) / 2, (t + b) / 2);
+                float scale = isAxisAligned() ? 1 : (float) Math.hypot(sx, m[Matrix.MSKEW_Y]);
+                float rx = (r - l) / 2 * (isAxisAligned() ? sx : scale);
+                float ry = (b - t) / 2 * (isAxisAligned() ? sy : scale);
+                put(VERB_OVAL);
+                put(cx - rx, cy - ry, cx + rx, cy + ry);
+            } else {
+                arcTo(l, t, r, b, 0, 180, true);
+                arcTo(l, t, r, b, 180, 180, false);
+                put(VERB_CLOSE);
+            }
+        }
+
+        private void arcTo(float l, float t, float r, float b, float startAngle,
+                           float sweepAngle, boolean forceMoveTo) {
+            float sx = m[Matrix.MSCALE_X], sy = m[Matrix.MSCALE_Y];
+            if (isAxisAligned() && sx > 0 && sy > 0) {
+                // positive axis-aligned scales keep (parametric) arc angles
+                put(VERB_ARC);
+                put(mapX(l, t), mapY(l, t), mapX(r, b), mapY(r, b));
+                put(startAngle, sweepAngle, forceMoveTo ? 1 : 0);
+                return;
+            }
+
+            if (isCircleUnderSimilarity(l, t, r, b)) {
+                // rotation and uniform scale turn a circular arc into a rotated circular arc
+                float scale = (float) Math.hypot(sx, m[Matrix.MSKEW_Y]);
+                float rotation = (float) Math.toDegrees(Math.atan2(m[Matrix.MSKEW_Y], sx));
+                float cx = mapX((l + r) / 2, (t + b) / 2);
+                float cy = mapY((l + r) / 2, (t + b) / 2);
+                float radius = (r - l) / 2 * scale;
+                put(VERB_ARC);
+                put(cx - radius, cy - radius, cx + radius, cy + radius);
+                put(startAngle + rotation, sweepAngle, forceMoveTo ? 1 : 0);
+                return;
+            }
+
+            // anything else: cubic segments of at most 90 degrees each
+            float cx = (l + r) / 2, cy = (t + b) / 2, rx = (r - l) / 2, ry = (b - t) / 2;
+            int segments = Math.max(1, (int) Math.ceil(Math.abs(sweepAngle) / 90 - 0.001f));
+            double step = Math.toRadians(sweepAngle) / segments;
+            double k = 4.0 / 3 * Math.tan(step / 4);
+            double a = Math.toRadians(startAngle);
+            float x0 = cx + rx * (float) Math.cos(a), y0 = cy + ry * (float) Math.sin(a);
+            if (forceMoveTo) {
+                moveTo(x0, y0);
+            } else {
+                lineTo(x0, y0);
+            }
+            for (int i = 0; i < segments; i++) {
+                double a1 = a + step;
+                float c1x = x0 - (float) (k * rx * Math.sin(a));
+                float c1y = y0 + (float) (k * ry * Math.cos(a));
+                float x1 = cx + rx * (float) Math.cos(a1), y1 = cy + ry * (float) Math.sin(a1);
+                float c2x = x1 + (float) (k * rx * Math.sin(a1));
+                float c2y = y1 - (float) (k * ry * Math.cos(a1));
+                put(VERB_CUBIC);
+                put(mapX(c1x, c1y), mapY(c1x, c1y), mapX(c2x, c2y), mapY(c2x, c2y));
+                put(mapX(x1, y1), mapY(x1, y1));
+                x0 = x1;
+                y0 = y1;
+                a = a1;
+            }
+        }
+
+        private boolean isCircleUnderSimilarity(float l, float t, float r, float b) {
+            return r - l == b - t
+                    && m[Matrix.MSCALE_X] == m[Matrix.MSCALE_Y]
+                    && m[Matrix.MSKEW_X] == -m[Matrix.MSKEW_Y]
+                    && (m[Matrix.MSCALE_X] != 0 || m[Matrix.MSKEW_Y] != 0);
+        }
+
+        private void put(float... values) {
+            if (mSize + values.length > mData.length) {
+                mData = Arrays.copyOf(mData, Math.max(2 * mData.length, mSize + values.length));
+            }
+            System.arraycopy(values, 0, mData, mSize, values.length);
+            mSize += values.length;
+        }
+    }
+}
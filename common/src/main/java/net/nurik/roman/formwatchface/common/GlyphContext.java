@@ -0,0 +1,34 @@
+/*
+ * Copyright 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.nurik.roman.formwatchface.common;
+
+/**
+ * The state a renderer draws glyphs with: the glyph interpreter's variables and where to draw.
+ * Glyphs themselves are stateless and shared by every renderer, so each renderer draws them
+ * through its own context.
+ */
+class GlyphContext {
+    public GlyphCanvas canvas;
+
+    // interpreter state
+    final float[] vars;
+    int pc;
+
+    public GlyphContext(int varCount) {
+        vars = new float[varCount];
+    }
+}
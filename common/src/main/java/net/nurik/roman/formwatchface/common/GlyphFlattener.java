@@ -0,0 +1,251 @@
+/*
+ * Copyright 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.nurik.roman.formwatchface.common;
+
+import java.util.Arrays;
+
+import static net.nurik.roman.formwatchface.common.GlyphCommands.CMD_RECT;
+import static net.nurik.roman.formwatchface.common.GlyphCommands.VERB_ARC;
+import static net.nurik.roman.formwatchface.common.GlyphCommands.VERB_CLOSE;
+import static net.nurik.roman.formwatchface.common.GlyphCommands.VERB_CUBIC;
+import static net.nurik.roman.formwatchface.common.GlyphCommands.VERB_END;
+import static net.nurik.roman.formwatchface.common.GlyphCommands.VERB_LINE;
+import static net.nurik.roman.formwatchface.common.GlyphCommands.VERB_MOVE;
+import static net.nurik.roman.formwatchface.common.GlyphCommands.VERB_OVAL;
+import static net.nurik.roman.formwatchface.common.GlyphCommands.VERB_ROUND_RECT;
+
+/**
+ * Flattens the shapes of a {@link GlyphCommands} stream into polygons, one command at a time,
+ * with curves split into as few lines as stay within {@link #TOLERANCE_PX} of the true curve
+ * at a given pixel scale. Used by {@link GlyphMesh} and {@link GlyphSimplifier}.
+ *
+ * <p>Contours are closed implicitly: repeated points and the closing point are dropped, and
+ * contours with fewer than three points left are dropped entirely.
+ */
+class GlyphFlattener {
+    /**
+     * The furthest flattened curves may stray from the true curve, in pixels.
+     */
+    static final float TOLERANCE_PX = 0.25f;
+
+    private static final int MAX_CURVE_SEGMENTS = 256;
+
+    private final float mTolerance;
+
+    // the command's contours, as x, y pairs, and the point index each contour ends at
+    private float[] mPoints = new float[64];
+    private int mPointCount;
+    private int[] mContourEnds = new int[8];
+    private int mContourCount;
+
+    /**
+     * Creates a flattener for drawing at the given pixel scale (pixels per unit).
+     */
+    GlyphFlattener(float pixelScale) {
+        mTolerance = TOLERANCE_PX / pixelScale;
+    }
+
+    /**
+     * Returns the flattening tolerance, in units.
+     */
+    public float getTolerance() {
+        return mTolerance;
+    }
+
+    public float[] getPoints() {
+        return mPoints;
+    }
+
+    public int getContourCount() {
+        return mContourCount;
+    }
+
+    public int getContourStart(int contour) {
+        return (contour == 0) ? 0 : mContourEnds[contour - 1];
+    }
+
+    public int getContourEnd(int contour) {
+        return mContourEnds[contour];
+    }
+
+    /**
+     * Flattens the command starting at the given position of the stream, replacing the
+     * previous command's contours.
+     */
+    public void flatten(float[] d, int pos) {
+        mPointCount = 0;
+        mContourCount = 0;
+
+        if ((int) d[pos] == CMD_RECT) {
+            addPoint(d[pos + 3], d[pos + 4]);
+            addPoint(d[pos + 5], d[pos + 4]);
+            addPoint(d[pos + 5], d[pos + 6]);
+            addPoint(d[pos + 3], d[pos + 6]);
+            finishContour();
+            return;
+        }
+
+        pos += 3;
+        while (true) {
+            switch ((int) d[pos++]) {
+                case VERB_END:
+                    finishContour();
+                    return;
+                case VERB_MOVE:
+                    finishContour();
+                    addPoint(d[pos], d[pos + 1]);
+                    pos += 2;
+                    break;
+                case VERB_LINE:
+                    addPoint(d[pos], d[pos + 1]);
+                    pos += 2;
+                    break;
+                case VERB_CUBIC:
+                    addCubic(d[pos], d[pos + 1], d[pos + 2], d[pos + 3], d[pos + 4], d[pos + 5]);
+                    pos += 6;
+                    break;
+                case VERB_ARC:
+                    if (d[pos + 6] != 0) {
+                        finishContour();
+                    }
+                    addArc(d[pos], d[pos + 1], d[pos + 2], d[pos + 3], d[pos + 4], d[pos + 5]);
+                    pos += 7;
+                    break;
+                case VERB_OVAL:
+                    finishContour();
+                    addArc(d[pos], d[pos + 1], d[pos + 2], d[pos + 3], 0, 360);
+                    finishContour();
+                    pos += 4;
+                    break;
+                case VERB_ROUND_RECT: {
+                    finishContour();
+                    float l = d[pos], t = d[pos + 1], r = d[pos + 2], b = d[pos + 3];
+                    float rx = Math.min(d[pos + 4], (r - l) / 2);
+                    float ry = Math.min(d[pos + 5], (b - t) / 2);
+                    addArc(r - 2 * rx, t, r, t + 2 * ry, -90, 90);
+                    addArc(r - 2 * rx, b - 2 * ry, r, b, 0, 90);
+                    addArc(l, b - 2 * ry, l + 2 * rx, b, 90, 90);
+                    addArc(l, t, l + 2 * rx, t + 2 * ry, 180, 90);
+                    finishContour();
+                    pos += 6;
+                    break;
+                }
+                case VERB_CLOSE:
+                    finishContour();
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Returns how many lines an arc of the given radii needs to stay within the given tolerance.
+     */
+    static int getArcSegments(float rx, float ry, float sweepAngle, float tolerance) {
+        // segments whose sagitta, r * (1 - cos(step / 2)), is within tolerance
+        float radius = Math.max(Math.abs(rx), Math.abs(ry));
+        if (tolerance >= radius) {
+            return 1;
+        }
+        double step = 2 * Math.acos(1 - tolerance / radius);
+        return (int) Math.max(1, Math.min(MAX_CURVE_SEGMENTS,
+                Math.ceil(Math.abs(Math.toRadians(sweepAngle)) / step)));
+    }
+
+    /**
+     * Returns how many lines a cubic needs to stay within the given tolerance.
+     */
+    static int getCubicSegments(float x0, float y0, float x1, float y1, float x2, float y2,
+                                float x3, float y3, float tolerance) {
+        // flattening error is at most 3/4 * (max second difference) / segments^2
+        float dd = Math.max(
+                (float) Math.hypot(x0 - 2 * x1 + x2, y0 - 2 * y1 + y2),
+                (float) Math.hypot(x1 - 2 * x2 + x3, y1 - 2 * y2 + y3));
+        return (int) Math.max(1,
+                Math.min(MAX_CURVE_SEGMENTS, Math.ceil(Math.sqrt(0.75f * dd / tolerance))));
+    }
+
+    private void addPoint(float x, float y) {
+        if (2 * mPointCount + 2 > mPoints.length) {
+            mPoints = Arrays.copyOf(mPoints, 2 * mPoints.length);
+        }
+        mPoints[2 * mPointCount] = x;
+        mPoints[2 * mPointCount + 1] = y;
+        ++mPointCount;
+    }
+
+    private void addArc(float l, float t, float r, float b, float startAngle, float sweepAngle) {
+        float cx = (l + r) / 2, cy = (t + b) / 2, rx = (r - l) / 2, ry = (b - t) / 2;
+        double sweep = Math.toRadians(sweepAngle);
+        int segments = getArcSegments(rx, ry, sweepAngle, mTolerance);
+        double start = Math.toRadians(startAngle);
+        for (int i = 0; i <= segments; i++) {
+            double a = start + sweep * i / segments;
+            addPoint(cx + rx * (float) Math.cos(a), cy + ry * (float) Math.sin(a));
+        }
+    }
+
+    private void addCubic(float x1, float y1, float x2, float y2, float x3, float y3) {
+        if (mPointCount == getContourStart(mContourCount)) {
+            addPoint(0, 0);
+        }
+        float x0 = mPoints[2 * mPointCount - 2], y0 = mPoints[2 * mPointCount - 1];
+        int segments = getCubicSegments(x0, y0, x1, y1, x2, y2, x3, y3, mTolerance);
+        for (int i = 1; i <= segments; i++) {
+            float u = i / (float) segments, v = 1 - u;
+            addPoint(v * v * v * x0 + 3 * v * v * u * x1 + 3 * v * u * u * x2 + u * u * u * x3,
+                    v * v * v * y0 + 3 * v * v * u * y1 + 3 * v * u * u * y2 + u * u * u * y3);
+        }
+    }
+
+    /**
+     * Ends the contour being flattened, dropping its repeated points and closing point, or the
+     * whole contour if that leaves fewer than three points.
+     */
+    private void finishContour() {
+        int first = getContourStart(mContourCount);
+        float[] p = mPoints;
+        float epsilon = mTolerance / 64;
+        int end = first;
+        for (int i = first; i < mPointCount; i++) {
+            if (end > first
+                    && Math.abs(p[2 * i] - p[2 * end - 2]) < epsilon
+                    && Math.abs(p[2 * i + 1] - p[2 * end - 1]) < epsilon) {
+                continue;
+            }
+            p[2 * end] = p[2 * i];
+            p[2 * end + 1] = p[2 * i + 1];
+            ++end;
+        }
+
+        if (end - first > 1
+                && Math.abs(p[2 * first] - p[2 * end - 2]) < epsilon
+                && Math.abs(p[2 * first + 1] - p[2 * end - 1]) < epsilon) {
+            --end; // closing point
+        }
+
+        if (end - first < 3) {
+            mPointCount = first;
+            return;
+        }
+
+        mPointCount = end;
+        if (mContourCount == mContourEnds.length) {
+            mContourEnds = Arrays.copyOf(mContourEnds, 2 * mContourEnds.length);
+        }
+        mContourEnds[mContourCount++] = end;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.nurik.roman.formwatchface.common;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static net.nurik.roman.formwatchface.common.FormClockRenderer.ClockPaints;
+import static net.nurik.roman.formwatchface.common.FormClockRenderer.Glyph;
+
+/**
+ * An LRU cache of pre-rendered ("baked") frames of glyph transition animations. Progress values
+ * are quantized to a fixed number of frames per transition, and the total size of all baked
+ * frames is kept under a memory cap by evicting the least recently used transitions. Frames are
+ * ARGB_8888 bitmaps sized to their transition's bounds, so all frames of a transition are the
+ * same size.
+ *
+ * <p>Evicted frames go back to {@link GlyphBitmapPool}, which reconfigures them for newly baked
+ * frames, so once every transition has been seen, lookups and evictions don't allocate.
+ */
+class GlyphFrameCache {
+    private final int mFramesPerTransition;
+    private final int mMaxBytes;
+
+    private float mTextSize;
+    private int mBytes;
+    private long mUseCount;
+    private ClockPaintsSnapshot mPaintsSnapshot = new ClockPaintsSnapshot();
+
+    private List<Entry> mEntries = new ArrayList<>();
+
+    public GlyphFrameCache(int framesPerTransition, int maxBytes) {
+        mFramesPerTransition = Math.max(2, framesPerTransition);
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Evicts all frames if they were baked at a different text size or with different paints.
+     */
+    public void validate(float textSize, ClockPaints paints) {
+        if (textSize == mTextSize && mPaintsSnapshot.matches(paints)) {
+            return;
+        }
+
+        for (int i = 0; i < mEntries.size(); i++) {
+            recycleFrames(mEntries.get(i));
+        }
+
+        mTextSize = textSize;
+        mPaintsSnapshot.set(paints);
+    }
+
+    public int getFrameIndex(float t) {
+        return Math.round(t * (mFramesPerTransition - 1));
+    }
+
+    public float getFrameProgress(int frame) {
+        return frame * 1f / (mFramesPerTransition - 1);
+    }
+
+    public Bitmap get(Glyph transition, int frame) {
+        Entry entry = findEntry(transition);
+        if (entry == null) {
+            return null;
+        }
+
+        entry.lastUse = ++mUseCount;
+        return entry.frames[frame];
+    }
+
+    /**
+     * Returns a cleared bitmap of the given size that the caller should render the given frame
+     * into, or null if the frame can't be cached without exceeding the memory cap.
+     */
+    public Bitmap newFrame(Glyph transition, int frame, int width, int height) {
+        int frameBytes = width * height * 4;
+        while (mBytes + frameBytes > mMaxBytes) {
+            Entry lru = null;
+            for (int i = 0; i < mEntries.size(); i++) {
+                Entry entry = mEntries.get(i);
+                if (entry.transition != transition && entry.frameCount > 0
+                        && (lru == null || entry.lastUse < lru.lastUse)) {
+                    lru = entry;
+                }
+            }
+
+            if (lru == null) {
+                return null;
+            }
+
+            recycleFrames(lru);
+        }
+
+        Entry entry = findEntry(transition);
+        if (entry == null) {
+            entry = new Entry(transition, mFramesPerTransition);
+            mEntries.add(entry);
+        }
+
+        Bitmap bitmap = GlyphBitmapPool.obtain(width, height);
+        entry.frames[frame] = bitmap;
+        entry.lastUse = ++mUseCount;
+        ++entry.frameCount;
+        mBytes += frameBytes;
+        return bitmap;
+    }
+
+    /**
+     * Evicts every frame, returning all frame bitmaps to {@link GlyphBitmapPool}.
+     */
+    public void release() {
+        for (int i = 0; i < mEntries.size(); i++) {
+            recycleFrames(mEntries.get(i));
+        }
+
+        mPaintsSnapshot.clear();
+    }
+
+    private Entry findEntry(Glyph transition) {
+        for (int i = 0; i < mEntries.size(); i++) {
+            if (mEntries.get(i).transition == transition) {
+                return mEntries.get(i);
+            }
+        }
+
+        return null;
+    }
+
+    private void recycleFrames(Entry entry) {
+        for (int i = 0; i < entry.frames.length; i++) {
+            Bitmap frame = entry.frames[i];
+            if (frame != null) {
+                mBytes -= frame.getWidth() * frame.getHeight() * 4;
+                GlyphBitmapPool.release(frame);
+                entry.frames[i] = null;
+            }
+        }
+
+        entry.frameCount = 0;
+    }
+
+    private static class Entry {
+        Glyph transition;
+        Bitmap[] frames;
+        int frameCount;
+        long lastUse;
+
+        Entry(Glyph transition, int frameCount) {
+            this.transition = transition;
+            this.frames = new Bitmap[frameCount];
+        }
+    }
+}
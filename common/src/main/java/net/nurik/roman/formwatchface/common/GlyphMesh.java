@@ -0,0 +1,185 @@
+/*
+ * Copyright 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.nurik.roman.formwatchface.common;
+
+import java.util.Arrays;
+
+/**
+ * The shapes of a {@link GlyphCommands} stream tessellated into triangles, for drawing with
+ * {@link android.graphics.Canvas#drawVertices}. Curves are flattened by {@link GlyphFlattener}
+ * for the pixel scale the mesh was built for.
+ *
+ * <p>Each contour is triangulated on its own by ear clipping, so contours must be simple and
+ * shapes must not have holes, which holds for every FORM glyph.
+ */
+class GlyphMesh {
+    private final float mTolerance;
+
+    // x, y pairs, and triangles as vertex indices; each command's range starts at its index in
+    // the start arrays, and ends at the next command's
+    private float[] mVertices = new float[128];
+    private int mVertexCount;
+    private short[] mIndices = new short[128];
+    private int mIndexCount;
+    private int[] mVertexStarts;
+    private int[] mIndexStarts;
+
+    /**
+     * Tessellates the given commands for drawing at the given pixel scale (pixels per unit).
+     */
+    GlyphMesh(float[] data, int[] offsets, int count, float pixelScale) {
+        GlyphFlattener flattener = new GlyphFlattener(pixelScale);
+        mTolerance = flattener.getTolerance();
+        mVertexStarts = new int[count + 1];
+        mIndexStarts = new int[count + 1];
+        for (int i = 0; i < count; i++) {
+            mVertexStarts[i] = mVertexCount;
+            mIndexStarts[i] = mIndexCount;
+            flattener.flatten(data, offsets[i]);
+            for (int c = 0; c < flattener.getContourCount(); c++) {
+                addContour(flattener.getPoints(), flattener.getContourStart(c),
+                        flattener.getContourEnd(c));
+            }
+        }
+        mVertexStarts[count] = mVertexCount;
+        mIndexStarts[count] = mIndexCount;
+
+        mVertices = Arrays.copyOf(mVertices, 2 * mVertexCount);
+        mIndices = Arrays.copyOf(mIndices, mIndexCount);
+    }
+
+    public float[] getVertices() {
+        return mVertices;
+    }
+
+    public short[] getIndices() {
+        return mIndices;
+    }
+
+    public int getVertexStart(int command) {
+        return mVertexStarts[command];
+    }
+
+    public int getVertexCount(int command) {
+        return mVertexStarts[command + 1] - mVertexStarts[command];
+    }
+
+    public int getIndexStart(int command) {
+        return mIndexStarts[command];
+    }
+
+    public int getIndexCount(int command) {
+        return mIndexStarts[command + 1] - mIndexStarts[command];
+    }
+
+    /*
+        Triangulation
+     */
+
+    /**
+     * Triangulates the given points of a flattened contour.
+     */
+    private void addContour(float[] points, int start, int end) {
+        int first = mVertexCount;
+        int n = end - start;
+        if (2 * (mVertexCount + n) > mVertices.length) {
+            mVertices = Arrays.copyOf(mVertices, Math.max(2 * mVertices.length,
+                    2 * (mVertexCount + n)));
+        }
+        System.arraycopy(points, 2 * start, mVertices, 2 * first, 2 * n);
+        mVertexCount += n;
+
+        float area = 0;
+        for (int i = 0; i < n; i++) {
+            int j = (i + 1) % n;
+            area += cross(first, first + i, first + j);
+        }
+        if (Math.abs(area) < mTolerance / 64) {
+            mVertexCount = first; // nothing to fill
+            return;
+        }
+
+        earClip(first, n, Math.signum(area));
+    }
+
+    private void earClip(int first, int n, float orientation) {
+        int[] prev = new int[n];
+        int[] next = new int[n];
+        for (int i = 0; i < n; i++) {
+            prev[i] = (i + n - 1) % n;
+            next[i] = (i + 1) % n;
+        }
+
+        int remaining = n;
+        int i = 0;
+        int misses = 0;
+        while (remaining > 3 && misses < remaining) {
+            int p = prev[i], q = next[i];
+            float turn = orientation * cross(first + p, first + i, first + q);
+            if (turn <= 0 && Math.abs(turn) < mTolerance * mTolerance) {
+                // collinear, or a sliver that's flat to within tolerance: drop it
+            } else if (turn > 0 && isEmptyTriangle(first, p, i, q, next)) {
+                addTriangle(first + p, first + i, first + q);
+            } else {
+                i = q;
+                ++misses;
+                continue;
+            }
+            next[p] = q;
+            prev[q] = p;
+            --remaining;
+            misses = 0;
+            i = q;
+        }
+
+        // the last triangle, or a fan of whatever a self-intersecting contour left over
+        for (int j = next[i]; next[j] != i; j = next[j]) {
+            addTriangle(first + i, first + j, first + next[j]);
+        }
+    }
+
+    private boolean isEmptyTriangle(int first, int a, int b, int c, int[] next) {
+        for (int j = next[c]; j != a; j = next[j]) {
+            if (contains(first + a, first + b, first + c, first + j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean contains(int a, int b, int c, int p) {
+        float d1 = cross(a, b, p), d2 = cross(b, c, p), d3 = cross(c, a, p);
+        boolean hasNegative = d1 < 0 || d2 < 0 || d3 < 0;
+        boolean hasPositive = d1 > 0 || d2 > 0 || d3 > 0;
+        return !(hasNegative && hasPositive);
+    }
+
+    private float cross(int a, int b, int c) {
+        float[] v = mVertices;
+        return (v[2 * b] - v[2 * a]) * (v[2 * c + 1] - v[2 * a + 1])
+                - (v[2 * b + 1] - v[2 * a + 1]) * (v[2 * c] - v[2 * a]);
+    }
+
+    private void addTriangle(int a, int b, int c) {
+        if (mIndexCount + 3 > mIndices.length) {
+            mIndices = Arrays.copyOf(mIndices, 2 * mIndices.length);
+        }
+        mIndices[mIndexCount++] = (short) a;
+        mIndices[mIndexCount++] = (short) b;
+        mIndices[mIndexCount++] = (short) c;
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.nurik.roman.formwatchface.common;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A set of glyph definitions in the compact binary format produced by the glyph compiler
+ * (tools/src/main/java/.../GlyphCompiler.java) from a text source such as
+ * common/src/main/glyphs/form.glyphs. Glyphs are run by an interpreter in
+ * {@link FormClockRenderer}; this class only parses the header and holds the bytecode.
+ *
+ * <p>Layout (big-endian):
+ * <pre>
+ * int   MAGIC
+ * short VERSION
+ * short glyph count
+ *   per glyph: str key, str canonical start, str canonical end,
+ *              byte variable count (including t), int width expr offset, int draw code offset
+ * short alias count
+ *   per alias: str key, short glyph index
+ * bytecode
+ * </pre>
+ * Strings are a byte length followed by ASCII bytes. Offsets are from the start of the data.
+ * Jump targets within draw code are relative to the start of that glyph's draw code.
+ *
+ * <p>Draw code is a sequence of statements ending in {@link #OP_END}. Each statement is an
+ * opcode followed by its operands: expressions, color indices (bytes), booleans (bytes) or jump
+ * targets (ints). Expressions are in prefix order and evaluate to floats. Variable 0 is the
+ * animation progress t.
+ */
+class GlyphSet {
+    private static final String TAG = "GlyphSet";
+
+    static final String ASSET_NAME = "form_glyphs.bin";
+
+    static final int MAGIC = 0x46474C59; // "FGLY"
+    static final int VERSION = 1;
+
+    // statements
+    static final byte OP_END = 0;
+    static final byte OP_SET_VAR = 1; // byte var, expr
+    static final byte OP_IF = 2; // byte comparison, expr, expr, int else target
+    static final byte OP_JUMP = 3; // int target
+    static final byte OP_SAVE = 10;
+    static final byte OP_RESTORE = 11;
+    static final byte OP_TRANSLATE = 12; // dx, dy
+    static final byte OP_ROTATE = 13; // degrees, px, py
+    static final byte OP_SCALE = 14; // sx, sy, px, py
+    static final byte OP_PATH_RESET = 20;
+    static final byte OP_PATH_MOVE_TO = 21; // x, y
+    static final byte OP_PATH_LINE_TO = 22; // x, y
+    static final byte OP_PATH_ARC_TO = 23; // l, t, r, b, start angle, sweep angle, byte forceMoveTo
+    static final byte OP_PATH_CLOSE = 24;
+    static final byte OP_DRAW_RECT = 30; // l, t, r, b, byte color
+    static final byte OP_DRAW_ARC = 31; // l, t, r, b, start, sweep, byte useCenter, byte color
+    static final byte OP_DRAW_OVAL = 32; // l, t, r, b, byte color
+    static final byte OP_DRAW_ROUND_RECT = 33; // l, t, r, b, rx, ry, byte color
+    static final byte OP_DRAW_PATH = 34; // byte color
+
+    // comparisons for OP_IF
+    static final byte CMP_GT = 0;
+    static final byte CMP_LT = 1;
+    static final byte CMP_EQ = 2;
+    static final byte CMP_GE = 3;
+    static final byte CMP_LE = 4;
+    static final byte CMP_NE = 5;
+
+    // expressions
+    static final byte EXPR_CONST = 0; // float
+    static final byte EXPR_VAR = 1; // byte var
+    static final byte EXPR_ADD = 2; // expr, expr
+    static final byte EXPR_SUB = 3; // expr, expr
+    static final byte EXPR_MUL = 4; // expr, expr
+    static final byte EXPR_DIV = 5; // expr, expr
+    static final byte EXPR_NEG = 6; // expr
+    static final byte EXPR_INTERPOLATE = 7; // f, min, max
+    static final byte EXPR_PROGRESS = 8; // v, min, max
+    static final byte EXPR_DECELERATE5 = 9; // t
+    static final byte EXPR_ACCELERATE5 = 10; // t
+
+    private static GlyphSet sDefault;
+
+    final ByteBuffer data;
+    final int glyphCount;
+    final String[] keys;
+    final String[] canonicalStarts;
+    final String[] canonicalEnds;
+    final int[] varCounts;
+    final int[] widthOffsets;
+    final int[] codeOffsets;
+    final String[] aliasKeys;
+    final int[] aliasGlyphs;
+
+    /**
+     * Returns the default glyph set, loading it from the app's assets the first time.
+     */
+    static synchronized GlyphSet getDefault(Context context) {
+        if (sDefault == null) {
+            try {
+                sDefault = new GlyphSet(loadAsset(context, ASSET_NAME));
+            } catch (IOException e) {
+                throw new IllegalStateException("Couldn't load glyphs from " + ASSET_NAME, e);
+            }
+        }
+        return sDefault;
+    }
+
+    /**
+     * Memory-maps the given asset if it's stored uncompressed, otherwise reads it into memory.
+     */
+    private static ByteBuffer loadAsset(Context context, String name) throws IOException {
+        try {
+            AssetFileDescriptor afd = context.getAssets().openFd(name);
+            FileInputStream in = afd.createInputStream();
+            try {
+                return in.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                        afd.getStartOffset(), afd.getLength());
+            } finally {
+                in.close();
+                afd.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Asset " + name + " is compressed, reading it instead of mapping it.");
+        }
+
+        InputStream in = context.getAssets().open(name);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return ByteBuffer.wrap(out.toByteArray());
+        } finally {
+            in.close();
+        }
+    }
+
+    GlyphSet(ByteBuffer data) {
+        this.data = data;
+        ByteBuffer header = data.duplicate();
+        if (header.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Not a glyph set");
+        }
+        int version = header.getShort();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported glyph set version " + version);
+        }
+
+        glyphCount = header.getShort();
+        keys = new String[glyphCount];
+        canonicalStarts = new String[glyphCount];
+        canonicalEnds = new String[glyphCount];
+        varCounts = new int[glyphCount];
+        widthOffsets = new int[glyphCount];
+        codeOffsets = new int[glyphCount];
+        for (int i = 0; i < glyphCount; i++) {
+            keys[i] = readString(header);
+            canonicalStarts[i] = readString(header);
+            canonicalEnds[i] = readString(header);
+            varCounts[i] = header.get();
+            widthOffsets[i] = header.getInt();
+            codeOffsets[i] = header.getInt();
+        }
+
+        int aliasCount = header.getShort();
+        aliasKeys = new String[aliasCount];
+        aliasGlyphs = new int[aliasCount];
+        for (int i = 0; i < aliasCount; i++) {
+            aliasKeys[i] = readString(header);
+            aliasGlyphs[i] = header.getShort();
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.get()];
+        buffer.get(bytes);
+        char[] chars = new char[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i] = (char) bytes[i];
+        }
+        return new String(chars);
+    }
+}
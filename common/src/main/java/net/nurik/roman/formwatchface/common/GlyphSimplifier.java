@@ -0,0 +1,227 @@
+/*
+ * Copyright 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.nurik.roman.formwatchface.common;
+
+import java.util.Arrays;
+
+import static net.nurik.roman.formwatchface.common.GlyphCommands.CMD_PATH;
+import static net.nurik.roman.formwatchface.common.GlyphCommands.CMD_RECT;
+import static net.nurik.roman.formwatchface.common.GlyphCommands.VERB_CLOSE;
+import static net.nurik.roman.formwatchface.common.GlyphCommands.VERB_END;
+import static net.nurik.roman.formwatchface.common.GlyphCommands.VERB_LINE;
+import static net.nurik.roman.formwatchface.common.GlyphCommands.VERB_MOVE;
+
+/**
+ * A level-of-detail copy of a {@link GlyphCommands} stream, for drawing at small pixel scales
+ * where full detail costs time but can't be seen:
+ * <ul>
+ * <li>Shapes smaller than {@link #MIN_SHAPE_PX} in both directions are dropped.</li>
+ * <li>Curves are flattened into as few lines as stay within {@link GlyphFlattener#TOLERANCE_PX}
+ * of the true curve.</li>
+ * <li>Paths that flatten to axis-aligned rectangles become rectangles, and consecutive
+ * rectangles of the same color that share an edge are merged.</li>
+ * </ul>
+ * Every change moves an edge by a fraction of a pixel, so switching between levels of detail
+ * doesn't visibly pop. The copy is only meant to be filled: every contour is closed, and the
+ * strokes of dropped or merged shapes are lost.
+ */
+class GlyphSimplifier {
+    /**
+     * Shapes smaller than this many pixels in both directions are dropped.
+     */
+    static final float MIN_SHAPE_PX = 0.5f;
+
+    private final GlyphFlattener mFlattener;
+    private final float mTolerance;
+    private final float mMinShapeSize;
+
+    private float[] mOut = new float[256];
+    private int mOutSize;
+    private int mLastRect = -1; // where the last command starts, if it's a rect
+
+    // the path command being written, and its bounds
+    private int mPathStart;
+    private int mPathContours;
+    private float mLeft, mTop, mRight, mBottom;
+
+    /**
+     * Simplifies the given commands for drawing at the given pixel scale (pixels per unit).
+     */
+    GlyphSimplifier(float[] data, int[] offsets, int count, float pixelScale) {
+        mFlattener = new GlyphFlattener(pixelScale);
+        mTolerance = mFlattener.getTolerance();
+        mMinShapeSize = MIN_SHAPE_PX / pixelScale;
+        for (int i = 0; i < count; i++) {
+            int pos = offsets[i];
+            if ((int) data[pos] == CMD_RECT) {
+                addRect((int) data[pos + 1], data[pos + 2],
+                        data[pos + 3], data[pos + 4], data[pos + 5], data[pos + 6]);
+            } else {
+                addPath(data, pos);
+            }
+        }
+
+        mOut = Arrays.copyOf(mOut, mOutSize);
+    }
+
+    public float[] getData() {
+        return mOut;
+    }
+
+    /*
+        Rects
+     */
+
+    private void addRect(int color, float strokeScale, float l, float t, float r, float b) {
+        if (Math.max(Math.abs(r - l), Math.abs(b - t)) < mMinShapeSize) {
+            return;
+        }
+
+        float left = Math.min(l, r), top = Math.min(t, b);
+        float right = Math.max(l, r), bottom = Math.max(t, b);
+        if (mLastRect >= 0 && mergeRect(color, strokeScale, left, top, right, bottom)) {
+            return;
+        }
+
+        mLastRect = mOutSize;
+        ensureOut(7);
+        mOut[mOutSize++] = CMD_RECT;
+        mOut[mOutSize++] = color;
+        mOut[mOutSize++] = strokeScale;
+        mOut[mOutSize++] = left;
+        mOut[mOutSize++] = top;
+        mOut[mOutSize++] = right;
+        mOut[mOutSize++] = bottom;
+    }
+
+    /**
+     * Grows the last rect to also cover the given one, if they're the same color and share an
+     * edge (to within tolerance), and returns whether it did.
+     */
+    private boolean mergeRect(int color, float strokeScale,
+                              float l, float t, float r, float b) {
+        float[] o = mOut;
+        int pos = mLastRect;
+        if ((int) o[pos + 1] != color || o[pos + 2] != strokeScale) {
+            return false;
+        }
+
+        float tol = mTolerance;
+        float pl = o[pos + 3], pt = o[pos + 4], pr = o[pos + 5], pb = o[pos + 6];
+        boolean sameRows = Math.abs(t - pt) <= tol && Math.abs(b - pb) <= tol
+                && l <= pr + tol && pl <= r + tol;
+        boolean sameColumns = Math.abs(l - pl) <= tol && Math.abs(r - pr) <= tol
+                && t <= pb + tol && pt <= b + tol;
+        if (!sameRows && !sameColumns) {
+            return false;
+        }
+
+        o[pos + 3] = Math.min(pl, l);
+        o[pos + 4] = Math.min(pt, t);
+        o[pos + 5] = Math.max(pr, r);
+        o[pos + 6] = Math.max(pb, b);
+        return true;
+    }
+
+    /*
+        Paths
+     */
+
+    private void addPath(float[] d, int pos) {
+        mPathStart = mOutSize;
+        mPathContours = 0;
+        mLeft = mTop = Float.MAX_VALUE;
+        mRight = mBottom = -Float.MAX_VALUE;
+        ensureOut(3);
+        mOut[mOutSize++] = CMD_PATH;
+        mOut[mOutSize++] = d[pos + 1];
+        mOut[mOutSize++] = d[pos + 2];
+
+        mFlattener.flatten(d, pos);
+        for (int c = 0; c < mFlattener.getContourCount(); c++) {
+            addContour(mFlattener.getPoints(), mFlattener.getContourStart(c),
+                    mFlattener.getContourEnd(c));
+        }
+
+        if (mPathContours == 0
+                || Math.max(mRight - mLeft, mBottom - mTop) < mMinShapeSize) {
+            mOutSize = mPathStart; // nothing visible
+            return;
+        }
+
+        int color = (int) mOut[mPathStart + 1];
+        float strokeScale = mOut[mPathStart + 2];
+        if (mPathContours == 1 && isRect()) {
+            mOutSize = mPathStart;
+            addRect(color, strokeScale, mLeft, mTop, mRight, mBottom);
+            return;
+        }
+
+        mLastRect = -1;
+        ensureOut(1);
+        mOut[mOutSize++] = VERB_END;
+    }
+
+    /**
+     * Whether the path's only contour, just written as a move and lines, is an axis-aligned
+     * rectangle to within tolerance.
+     */
+    private boolean isRect() {
+        // MOVE x y, LINE x y, LINE x y, LINE x y, CLOSE
+        int pos = mPathStart + 3;
+        if (mOutSize - pos != 13) {
+            return false;
+        }
+
+        float tol = mTolerance;
+        for (int i = 0; i < 4; i++) {
+            int a = pos + 1 + 3 * i;
+            int b = pos + 1 + 3 * ((i + 1) % 4);
+            boolean vertical = Math.abs(mOut[a] - mOut[b]) <= tol;
+            boolean horizontal = Math.abs(mOut[a + 1] - mOut[b + 1]) <= tol;
+            if (!vertical && !horizontal) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the given points of a flattened contour as a move, lines and a close.
+     */
+    private void addContour(float[] points, int start, int end) {
+        ensureOut(3 * (end - start) + 1);
+        for (int i = start; i < end; i++) {
+            float x = points[2 * i], y = points[2 * i + 1];
+            mOut[mOutSize++] = (i == start) ? VERB_MOVE : VERB_LINE;
+            mOut[mOutSize++] = x;
+            mOut[mOutSize++] = y;
+            mLeft = Math.min(mLeft, x);
+            mTop = Math.min(mTop, y);
+            mRight = Math.max(mRight, x);
+            mBottom = Math.max(mBottom, y);
+        }
+        mOut[mOutSize++] = VERB_CLOSE;
+        ++mPathContours;
+    }
+
+    private void ensureOut(int size) {
+        if (mOutSize + size > mOut.length) {
+            mOut = Arrays.copyOf(mOut, 2 * mOut.length + size);
+        }
+    }
+}
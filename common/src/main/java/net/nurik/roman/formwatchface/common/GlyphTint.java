@@ -0,0 +1,160 @@
+/*
+ * Copyright 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.nurik.roman.formwatchface.common;
+
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
+import android.graphics.Paint;
+
+import static net.nurik.roman.formwatchface.common.FormClockRenderer.ClockPaints;
+
+/**
+ * Lets offscreen glyph rasters be cached independently of the fill colors. Glyphs are drawn with
+ * {@link #getChannelPaints channel paints} that fill COLOR_1, COLOR_2 and COLOR_3 with pure red,
+ * green and blue, so each pixel holds the coverage of each color in its own channel. The
+ * {@link #getCompositePaint composite paint} maps those channels back to the real fill colors
+ * through a color matrix, so a theme or palette change only swaps the color filter.
+ *
+ * <p>Source-over blending keeps a pixel's channel weights summing to its alpha, so the tinted
+ * result matches drawing with the real colors directly, as long as those are opaque. Strokes
+ * aren't channel-packed, so paints with a stroke are drawn with their own colors.
+ */
+class GlyphTint {
+    private static final int[] CHANNEL_COLORS = {0xffff0000, 0xff00ff00, 0xff0000ff};
+
+    private ClockPaints mChannelPaints;
+    private Paint mCompositePaint;
+    private ColorMatrix mColorMatrix = new ColorMatrix();
+    private float[] mMatrix = new float[20];
+
+    // composite filters for the last two palettes, most recently used first, so that drawing
+    // two themes in turn (as the watch face does while revealing a new theme) reuses them
+    private ColorFilter[] mFilters = new ColorFilter[2];
+    private int[][] mFilterColors = new int[2][3];
+
+    public GlyphTint() {
+        mCompositePaint = new Paint();
+        mCompositePaint.setFilterBitmap(true);
+        mMatrix[18] = 1; // alpha passes through
+    }
+
+    /**
+     * Returns whether glyphs drawn with the given paints can be channel-packed and tinted later.
+     */
+    public boolean canTint(ClockPaints paints) {
+        if (paints.hasStroke) {
+            return false;
+        }
+
+        for (int i = 0; i < 3; i++) {
+            if (Color.alpha(paints.fills[i].getColor()) != 255) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns paints that fill each color with its channel, otherwise configured like the given
+     * paints. The same instance is returned for as long as the paints' fill flags don't change,
+     * so caches snapshotting it survive recoloring of the given paints.
+     */
+    public ClockPaints getChannelPaints(ClockPaints paints) {
+        if (mChannelPaints != null) {
+            boolean matches = true;
+            for (int i = 0; i < 3; i++) {
+                if (mChannelPaints.fills[i].getFlags() != paints.fills[i].getFlags()) {
+                    matches = false;
+                    break;
+                }
+            }
+
+            if (matches) {
+                return mChannelPaints;
+            }
+        }
+
+        mChannelPaints = new ClockPaints();
+        for (int i = 0; i < 3; i++) {
+            Paint fill = new Paint(paints.fills[i]);
+            fill.setColor(CHANNEL_COLORS[i]);
+            mChannelPaints.fills[i] = fill;
+        }
+        mChannelPaints.date = paints.date;
+        return mChannelPaints;
+    }
+
+    /**
+     * Returns a paint that composites channel-packed glyph rasters in the given paints' fill
+     * colors.
+     */
+    public Paint getCompositePaint(ClockPaints paints) {
+        if (!hasFilter(0, paints)) {
+            // bring the other palette's filter to the front, or replace it if it's not a match
+            swapFilters();
+            if (!hasFilter(0, paints)) {
+                buildFilter(paints);
+            }
+        }
+
+        if (mCompositePaint.getColorFilter() != mFilters[0]) {
+            mCompositePaint.setColorFilter(mFilters[0]);
+        }
+        return mCompositePaint;
+    }
+
+    private boolean hasFilter(int i, ClockPaints paints) {
+        if (mFilters[i] == null) {
+            return false;
+        }
+
+        for (int c = 0; c < 3; c++) {
+            if (paints.fills[c].getColor() != mFilterColors[i][c]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void swapFilters() {
+        ColorFilter filter = mFilters[0];
+        mFilters[0] = mFilters[1];
+        mFilters[1] = filter;
+        int[] colors = mFilterColors[0];
+        mFilterColors[0] = mFilterColors[1];
+        mFilterColors[1] = colors;
+    }
+
+    private void buildFilter(ClockPaints paints) {
+        int[] colors = mFilterColors[0];
+        for (int i = 0; i < 3; i++) {
+            colors[i] = paints.fills[i].getColor();
+        }
+
+        // each output channel is the channel-weighted sum of the three colors
+        for (int i = 0; i < 3; i++) {
+            mMatrix[i] = Color.red(colors[i]) / 255f;
+            mMatrix[5 + i] = Color.green(colors[i]) / 255f;
+            mMatrix[10 + i] = Color.blue(colors[i]) / 255f;
+        }
+        mColorMatrix.set(mMatrix);
+        mFilters[0] = new ColorMatrixColorFilter(mColorMatrix);
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.nurik.roman.formwatchface.common;
+
+/**
+ * A {@link ClockSource} whose time only moves when told to.
+ */
+public class VirtualClockSource implements ClockSource {
+    private long mTimeMillis;
+
+    public VirtualClockSource(long timeMillis) {
+        mTimeMillis = timeMillis;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return mTimeMillis;
+    }
+
+    public void setTimeMillis(long timeMillis) {
+        mTimeMillis = timeMillis;
+    }
+
+    /**
+     * Moves time forward (or backward, if negative) by the given number of millis.
+     */
+    public void advance(long millis) {
+        mTimeMillis += millis;
+    }
+}
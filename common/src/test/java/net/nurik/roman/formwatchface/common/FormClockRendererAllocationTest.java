@@ -0,0 +1,147 @@
+/*
+ * Copyright 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.nurik.roman.formwatchface.common;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static net.nurik.roman.formwatchface.common.FormClockRenderer.ClockPaints;
+import static net.nurik.roman.formwatchface.common.FormClockRenderer.Options;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Guards the renderer's zero-allocation frame path: once warmed up, a simulated minute of frames
+ * at 60fps must not allocate anything. Renderers are set up like the watch face's, sharing a
+ * clock model on virtual time.
+ *
+ * <p>Offscreen glyphs can't be tested here, since bitmaps are no-ops on the JVM, but the time
+ * and layout updates and direct drawing (glyph interpreter, recordings, batching and meshes)
+ * are the same code on every frame. Direct draws use opaque, non-anti-aliased fills, so that
+ * settled glyphs are drawn as meshes.
+ */
+public class FormClockRendererAllocationTest {
+    private static final long FRAME_MILLIS = 16;
+    private static final int WARM_UP_MINUTES = 10;
+
+    private VirtualClockSource mClock = new VirtualClockSource(1445000000000L);
+    private ClockModel mClockModel = new ClockModel(mClock);
+    private Canvas mCanvas = new Canvas();
+
+    @Test
+    public void updatesDontAllocate() {
+        FormClockRenderer[] renderers = newRenderers(false);
+        runMinutes(renderers, WARM_UP_MINUTES, false);
+        assertNoAllocations(renderers, false);
+    }
+
+    @Test
+    public void directDrawsDontAllocate() {
+        FormClockRenderer[] renderers = newRenderers(true);
+        runMinutes(renderers, WARM_UP_MINUTES, true);
+        for (FormClockRenderer renderer : renderers) {
+            assertTrue("fills are tessellated", renderer.getGlyphBatch().isTessellating());
+        }
+        assertNoAllocations(renderers, true);
+    }
+
+    private FormClockRenderer[] newRenderers(boolean ambient) {
+        ClockPaints paints = new ClockPaints();
+        for (int i = 0; i < 3; i++) {
+            paints.fills[i] = ambient ? new MeshFillPaint() : new Paint();
+        }
+
+        Options options = new Options();
+        options.textSize = 72;
+        options.charSpacing = 8;
+        options.glyphAnimAverageDelay = 500;
+        options.glyphAnimDuration = 2000;
+        options.batchDrawCalls = ambient;
+        options.tessellateFills = ambient;
+        options.maxSimplifiedTextSize = 48;
+        FormClockRenderer hourMin = new FormClockRenderer(TestFonts.getFont(), options, paints);
+        hourMin.setClockModel(mClockModel);
+
+        options = new Options(options);
+        options.textSize = 32;
+        options.onlySeconds = true;
+        options.charSpacing = 6;
+        options.glyphAnimAverageDelay = 0;
+        options.glyphAnimDuration = 750;
+        FormClockRenderer seconds = new FormClockRenderer(TestFonts.getFont(), options, paints);
+        seconds.setClockModel(mClockModel);
+
+        return new FormClockRenderer[]{hourMin, seconds};
+    }
+
+    private void assertNoAllocations(FormClockRenderer[] renderers, boolean draw) {
+        java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations
+                = (com.sun.management.ThreadMXBean) threadMXBean;
+        assumeTrue(allocations.isThreadAllocatedMemorySupported());
+        allocations.setThreadAllocatedMemoryEnabled(true);
+
+        long threadId = Thread.currentThread().getId();
+        // the first calls may allocate themselves
+        allocations.getThreadAllocatedBytes(threadId);
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        runMinutes(renderers, 1, draw);
+        long after = allocations.getThreadAllocatedBytes(threadId);
+
+        assertEquals("bytes allocated in a minute of frames", 0, after - before);
+    }
+
+    /**
+     * An opaque, non-anti-aliased fill. The mockable android.jar's Paint getters all return their
+     * defaults (an alpha of 0), which would keep {@link GlyphBatch} from tessellating.
+     */
+    private static class MeshFillPaint extends Paint {
+        @Override
+        public int getAlpha() {
+            return 255;
+        }
+
+        @Override
+        public boolean isAntiAlias() {
+            return false;
+        }
+    }
+
+    private void runMinutes(FormClockRenderer[] renderers, int minutes, boolean draw) {
+        long frames = minutes * ClockTime.MINUTE_MILLIS / FRAME_MILLIS;
+        for (long frame = 0; frame < frames; frame++) {
+            mClock.advance(FRAME_MILLIS);
+            mClockModel.update();
+            for (FormClockRenderer renderer : renderers) {
+                renderer.updateTime();
+                renderer.measure(true);
+                renderer.isAnimating(true);
+                renderer.getLayoutGeneration();
+                renderer.timeToNextAnimation();
+                if (draw) {
+                    renderer.draw(mCanvas, 0, 0, true, false);
+                }
+            }
+        }
+    }
+}
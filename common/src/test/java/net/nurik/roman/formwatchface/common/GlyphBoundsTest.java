@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.nurik.roman.formwatchface.common;
+
+import android.graphics.RectF;
+
+import org.junit.Test;
+
+import static net.nurik.roman.formwatchface.common.FormClockRenderer.Font;
+import static net.nurik.roman.formwatchface.common.FormClockRenderer.Glyph;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that every glyph in the default glyph set draws inside {@link Glyph#getBounds}, which
+ * the renderer clears, composites and bakes frames from, so nothing a glyph draws gets clipped.
+ */
+public class GlyphBoundsTest {
+    private static final int SAMPLES = 10000;
+
+    @Test
+    public void glyphsStayInsideBounds() {
+        GlyphSet glyphSet = TestFonts.getGlyphSet();
+        GlyphCommands.Recorder recorder = new GlyphCommands.Recorder();
+        for (int i = 0; i < glyphSet.glyphCount; i++) {
+            Font.ProgramGlyph glyph = new Font.ProgramGlyph(glyphSet, i);
+            GlyphContext context = new GlyphContext(glyphSet.varCounts[i]);
+            context.canvas = recorder;
+            RectF bounds = glyph.getBounds();
+            for (int k = 0; k <= SAMPLES; k++) {
+                float t = k * 1f / SAMPLES;
+                RectF drawn = measure(recorder, glyph, context, t);
+                assertTrue(glyphSet.keys[i] + " at t=" + t + " draws " + toString(drawn)
+                                + ", outside its bounds " + toString(bounds),
+                        contains(bounds, drawn));
+            }
+        }
+    }
+
+    /**
+     * Settled glyphs are rasterized into glyph atlas cells that only cover their layout box.
+     */
+    @Test
+    public void settledGlyphsStayInsideLayoutBox() {
+        Font font = TestFonts.getFont();
+        GlyphContext context = font.newContext();
+        GlyphCommands.Recorder recorder = new GlyphCommands.Recorder();
+        context.canvas = recorder;
+        for (int i = 0; i < GlyphAtlas.GLYPHS.length(); i++) {
+            Glyph glyph = font.getGlyph(font.getSettledTransition(i));
+            RectF box = new RectF();
+            box.right = glyph.getWidthAtProgress(0);
+            box.bottom = Font.DRAWHEIGHT;
+            RectF drawn = measure(recorder, glyph, context, 0);
+            assertTrue("settled " + GlyphAtlas.GLYPHS.charAt(i) + " draws " + toString(drawn)
+                    + ", outside its layout box " + toString(box), contains(box, drawn));
+        }
+    }
+
+    private static RectF measure(GlyphCommands.Recorder recorder, Glyph glyph,
+                                 GlyphContext context, float t) {
+        // RectF's own methods aren't available in JVM unit tests
+        RectF drawn = new RectF();
+        drawn.left = drawn.top = Float.MAX_VALUE;
+        drawn.right = drawn.bottom = -Float.MAX_VALUE;
+        recorder.reset();
+        glyph.draw(context, t);
+        recorder.unionBounds(drawn);
+        return drawn;
+    }
+
+    private static boolean contains(RectF outer, RectF inner) {
+        return inner.left > inner.right // nothing drawn
+                || (inner.left >= outer.left && inner.top >= outer.top
+                && inner.right <= outer.right && inner.bottom <= outer.bottom);
+    }
+
+    private static String toString(RectF r) {
+        return "(" + r.left + ", " + r.top + ", " + r.right + ", " + r.bottom + ")";
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.nurik.roman.formwatchface.common;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import static net.nurik.roman.formwatchface.common.FormClockRenderer.Font;
+import static org.junit.Assert.fail;
+
+/**
+ * Draws every glyph in the default glyph set at several points of its transition with
+ * {@link RasterGlyphCanvas} and compares the result against a reference image, so that changes
+ * to the glyph data, compiler or interpreter that alter what glyphs look like get noticed.
+ *
+ * <p>On a mismatch (or if the reference is missing) the actual image is written to
+ * build/golden/, to look at and, if the change is intended, copy over the reference.
+ */
+public class GlyphGoldenImageTest {
+    private static final File GOLDEN_DIR = new File("src/test/resources/golden");
+    private static final File FAILURE_DIR = new File("build/golden");
+
+    private static final float[] PROGRESS = {0, 0.25f, 0.5f, 0.75f, 1};
+    private static final float TEXT_SIZE = 48;
+    private static final int CELL_PADDING = 4;
+    private static final int[] COLORS = {0xffd32f2f, 0xff1976d2, 0xff388e3c};
+
+    // a pixel differs if any channel is off by more than this, which absorbs floating point
+    // differences between JVMs; only a small fraction of pixels may differ
+    private static final int MAX_CHANNEL_DIFF = 8;
+    private static final float MAX_DIFF_PIXEL_FRACTION = 0.001f;
+
+    @Test
+    public void glyphsMatchGolden() throws IOException {
+        assertMatchesGolden("glyphs.png", drawGlyphSheet(true));
+    }
+
+    @Test
+    public void aliasedGlyphsMatchGolden() throws IOException {
+        assertMatchesGolden("glyphs_aliased.png", drawGlyphSheet(false));
+    }
+
+    /**
+     * Draws a sheet with a row per glyph and a column per progress value.
+     */
+    private static RasterGlyphCanvas drawGlyphSheet(boolean antiAlias) {
+        GlyphSet glyphSet = TestFonts.getGlyphSet();
+        float scale = TEXT_SIZE / Font.DRAWHEIGHT;
+        float maxWidth = 0;
+        Font.ProgramGlyph[] glyphs = new Font.ProgramGlyph[glyphSet.glyphCount];
+        for (int i = 0; i < glyphs.length; i++) {
+            glyphs[i] = new Font.ProgramGlyph(glyphSet, i);
+            maxWidth = Math.max(maxWidth, glyphs[i].getMaxWidth());
+        }
+
+        int cellWidth = (int) Math.ceil(maxWidth * scale) + 2 * CELL_PADDING;
+        int cellHeight = (int) Math.ceil(TEXT_SIZE) + 2 * CELL_PADDING;
+        RasterGlyphCanvas raster = new RasterGlyphCanvas(cellWidth * PROGRESS.length,
+                cellHeight * glyphs.length, COLORS, antiAlias);
+        for (int i = 0; i < glyphs.length; i++) {
+            GlyphContext context = new GlyphContext(glyphSet.varCounts[i]);
+            context.canvas = raster;
+            for (int j = 0; j < PROGRESS.length; j++) {
+                raster.save();
+                raster.translate(j * cellWidth + CELL_PADDING, i * cellHeight + CELL_PADDING);
+                raster.scale(scale, scale, 0, 0);
+                glyphs[i].draw(context, PROGRESS[j]);
+                raster.restore();
+            }
+        }
+
+        return raster;
+    }
+
+    private static void assertMatchesGolden(String name, RasterGlyphCanvas raster)
+            throws IOException {
+        File goldenFile = new File(GOLDEN_DIR, name);
+        if (!goldenFile.exists()) {
+            fail("No reference image " + goldenFile + "; wrote the actual image to "
+                    + writeActual(name, raster));
+        }
+
+        BufferedImage golden = ImageIO.read(goldenFile);
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        if (golden.getWidth() != width || golden.getHeight() != height) {
+            fail(name + " is " + width + "x" + height + ", reference is " + golden.getWidth()
+                    + "x" + golden.getHeight() + "; wrote the actual image to "
+                    + writeActual(name, raster));
+        }
+
+        int[] expected = golden.getRGB(0, 0, width, height, null, 0, width);
+        int[] actual = raster.getPixels();
+        int diffPixels = 0;
+        for (int i = 0; i < actual.length; i++) {
+            if (!pixelsMatch(expected[i], actual[i])) {
+                ++diffPixels;
+            }
+        }
+
+        if (diffPixels > MAX_DIFF_PIXEL_FRACTION * actual.length) {
+            fail(diffPixels + " pixels of " + name + " differ from the reference; wrote the "
+                    + "actual image to " + writeActual(name, raster));
+        }
+    }
+
+    private static boolean pixelsMatch(int expected, int actual) {
+        if ((expected >>> 24) == 0 && (actual >>> 24) == 0) {
+            // fully transparent, whatever the color
+            return true;
+        }
+
+        for (int shift = 0; shift < 32; shift += 8) {
+            int diff = ((expected >>> shift) & 0xff) - ((actual >>> shift) & 0xff);
+            if (Math.abs(diff) > MAX_CHANNEL_DIFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static File writeActual(String name, RasterGlyphCanvas raster) throws IOException {
+        BufferedImage image = new BufferedImage(raster.getWidth(), raster.getHeight(),
+                BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, raster.getWidth(), raster.getHeight(), raster.getPixels(), 0,
+                raster.getWidth());
+        FAILURE_DIR.mkdirs();
+        File file = new File(FAILURE_DIR, name);
+        ImageIO.write(image, "png", file);
+        return file;
+    }
+}
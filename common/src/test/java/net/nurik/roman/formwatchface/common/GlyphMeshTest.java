@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.nurik.roman.formwatchface.common;
+
+import android.graphics.RectF;
+
+import org.junit.Test;
+
+import static net.nurik.roman.formwatchface.common.FormClockRenderer.Font;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that {@link GlyphMesh} triangulates every glyph in the default glyph set faithfully,
+ * by filling each glyph's mesh and its shapes with {@link RasterGlyphCanvas} at several points
+ * of its transition and comparing the two. The mesh may only differ from the shapes along
+ * their edges, where the two flatten curves differently; anything else is a missing, extra or
+ * misplaced triangle.
+ */
+public class GlyphMeshTest {
+    private static final float[] PROGRESS = {0, 0.25f, 0.5f, 0.75f, 1};
+    private static final float[] TEXT_SIZES = {20, 72};
+    private static final int CELL_PADDING = 4;
+    private static final int[] COLORS = {0xffff0000, 0xff00ff00, 0xff0000ff};
+
+    @Test
+    public void meshesMatchShapes() {
+        GlyphSet glyphSet = TestFonts.getGlyphSet();
+        for (int i = 0; i < glyphSet.glyphCount; i++) {
+            Font.ProgramGlyph glyph = new Font.ProgramGlyph(glyphSet, i);
+            GlyphContext context = new GlyphContext(glyphSet.varCounts[i]);
+            for (float textSize : TEXT_SIZES) {
+                // cells cover the glyph's drawing bounds, which can start left of and above 0
+                float scale = textSize / Font.DRAWHEIGHT;
+                RectF bounds = glyph.getBounds();
+                float originX = CELL_PADDING - bounds.left * scale;
+                float originY = CELL_PADDING - bounds.top * scale;
+                int width = (int) Math.ceil(originX + bounds.right * scale) + CELL_PADDING;
+                int height = (int) Math.ceil(originY + bounds.bottom * scale) + CELL_PADDING;
+                RasterGlyphCanvas shapes = new RasterGlyphCanvas(width, height, COLORS, false);
+                RasterGlyphCanvas mesh = new RasterGlyphCanvas(width, height, COLORS, false);
+                for (float t : PROGRESS) {
+                    GlyphCommands.Recorder recorder = new GlyphCommands.Recorder();
+                    context.canvas = recorder;
+                    glyph.draw(context, t);
+                    GlyphCommands commands = recorder.build();
+
+                    shapes.clear();
+                    shapes.translate(originX, originY);
+                    shapes.scale(scale, scale, 0, 0);
+                    context.canvas = shapes;
+                    glyph.draw(context, t);
+
+                    mesh.clear();
+                    mesh.translate(originX, originY);
+                    mesh.scale(scale, scale, 0, 0);
+                    fillMesh(mesh, commands, commands.getMesh(scale));
+
+                    int[] expected = shapes.getPixels();
+                    int[] actual = mesh.getPixels();
+                    for (int p = 0; p < expected.length; p++) {
+                        int x = p % width, y = p / width;
+                        if (expected[p] != actual[p] && !isEdge(expected, width, height, x, y)) {
+                            fail("mesh of " + glyphSet.keys[i] + " at t=" + t + ", " + textSize
+                                    + "px differs from its shapes at (" + x + ", " + y + ")");
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills each command's triangles, as one path per command so that triangles sharing an
+     * edge leave no seam.
+     */
+    private static void fillMesh(RasterGlyphCanvas raster, GlyphCommands commands,
+                                 GlyphMesh mesh) {
+        float[] vertices = mesh.getVertices();
+        short[] indices = mesh.getIndices();
+        for (int c = 0; c < commands.getCount(); c++) {
+            raster.pathReset();
+            int end = mesh.getIndexStart(c) + mesh.getIndexCount(c);
+            for (int i = mesh.getIndexStart(c); i < end; i += 3) {
+                raster.pathMoveTo(vertices[2 * indices[i]], vertices[2 * indices[i] + 1]);
+                raster.pathLineTo(vertices[2 * indices[i + 1]], vertices[2 * indices[i + 1] + 1]);
+                raster.pathLineTo(vertices[2 * indices[i + 2]], vertices[2 * indices[i + 2] + 1]);
+                raster.pathClose();
+            }
+            raster.drawPath(commands.getColor(c));
+        }
+    }
+
+    /**
+     * Returns whether the given pixel has a neighbor of a different color.
+     */
+    private static boolean isEdge(int[] pixels, int width, int height, int x, int y) {
+        int pixel = pixels[y * width + x];
+        for (int ny = Math.max(0, y - 1); ny <= Math.min(height - 1, y + 1); ny++) {
+            for (int nx = Math.max(0, x - 1); nx <= Math.min(width - 1, x + 1); nx++) {
+                if (pixels[ny * width + nx] != pixel) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.nurik.roman.formwatchface.common;
+
+import org.junit.Test;
+
+import static net.nurik.roman.formwatchface.common.FormClockRenderer.Font;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the sampled width tables of every glyph in the default glyph set stay within
+ * {@link Font#WIDTH_TABLE_MAX_ERROR} of the analytic width curves.
+ */
+public class GlyphWidthTableTest {
+    private static final int SAMPLES = 200000;
+
+    @Test
+    public void widthTablesStayWithinMaxError() {
+        GlyphSet glyphSet = TestFonts.getGlyphSet();
+        for (int i = 0; i < glyphSet.glyphCount; i++) {
+            Font.ProgramGlyph glyph = new Font.ProgramGlyph(glyphSet, i);
+            GlyphContext context = new GlyphContext(glyphSet.varCounts[i]);
+            float maxError = 0;
+            float maxErrorT = 0;
+            for (int k = 0; k <= SAMPLES; k++) {
+                float t = k * 1f / SAMPLES;
+                float error = Math.abs(glyph.getWidthAtProgress(t)
+                        - glyph.computeWidthAtProgress(context, t));
+                if (error > maxError) {
+                    maxError = error;
+                    maxErrorT = t;
+                }
+            }
+
+            assertTrue("width of " + glyphSet.keys[i] + " off by " + maxError + " at t="
+                    + maxErrorT, maxError <= Font.WIDTH_TABLE_MAX_ERROR);
+        }
+    }
+
+    @Test
+    public void widthTablesAreExactAtEnds() {
+        GlyphSet glyphSet = TestFonts.getGlyphSet();
+        for (int i = 0; i < glyphSet.glyphCount; i++) {
+            Font.ProgramGlyph glyph = new Font.ProgramGlyph(glyphSet, i);
+            GlyphContext context = new GlyphContext(glyphSet.varCounts[i]);
+            assertEquals(glyphSet.keys[i] + " at t=0",
+                    glyph.computeWidthAtProgress(context, 0), glyph.getWidthAtProgress(0), 0);
+            assertEquals(glyphSet.keys[i] + " at t=1",
+                    glyph.computeWidthAtProgress(context, 1), glyph.getWidthAtProgress(1), 0);
+        }
+    }
+
+    @Test
+    public void maxWidthBoundsEveryWidth() {
+        GlyphSet glyphSet = TestFonts.getGlyphSet();
+        for (int i = 0; i < glyphSet.glyphCount; i++) {
+            Font.ProgramGlyph glyph = new Font.ProgramGlyph(glyphSet, i);
+            GlyphContext context = new GlyphContext(glyphSet.varCounts[i]);
+            for (int k = 0; k <= SAMPLES; k++) {
+                float t = k * 1f / SAMPLES;
+                assertTrue(glyphSet.keys[i] + " wider than its max width at t=" + t,
+                        glyph.computeWidthAtProgress(context, t) <= glyph.getMaxWidth());
+            }
+        }
+    }
+}
@@ -0,0 +1,515 @@
+/*
+ * Copyright 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.nurik.roman.formwatchface.common;
+
+import java.util.Arrays;
+
+/**
+ * A glyph canvas that rasterizes into an in-memory ARGB pixel buffer using only plain Java, so
+ * tests can draw glyphs and compare them against reference images or other renderings on the
+ * JVM, without a device or emulator. For example:
+ * <pre>
+ * FormClockRenderer.Font font = TestFonts.getFont();
+ * RasterGlyphCanvas raster = new RasterGlyphCanvas(width, height, colors, true);
+ * GlyphContext context = font.newContext();
+ * context.canvas = raster;
+ * raster.scale(scale, scale, 0, 0);
+ * font.getGlyph(font.getTransition('1', '2')).draw(context, t);
+ * </pre>
+ *
+ * <p>Shapes are filled using the nonzero winding rule, in the ARGB color given for each of the
+ * font's colors. There are no strokes. Curves are flattened to within
+ * {@link GlyphFlattener#TOLERANCE_PX}. Anti-aliased coverage is sampled on {@link #SUBSAMPLES}
+ * sub-scanlines per row, with exact horizontal coverage. Without anti-aliasing, a pixel is
+ * filled when its center is inside the shape.
+ */
+class RasterGlyphCanvas implements GlyphCanvas {
+    static final int SUBSAMPLES = 4;
+
+    private static final int PATH_MOVE = 1;
+    private static final int PATH_LINE = 2;
+    private static final int PATH_ARC = 3;
+    private static final int PATH_CLOSE = 4;
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int[] mPixels;
+    private final int[] mColors;
+    private final boolean mAntiAlias;
+
+    // the transform, as x' = a * x + c * y + e and y' = b * x + d * y + f, and saved copies
+    private float[] mMatrix = {1, 0, 0, 1, 0, 0};
+    private float[] mSavedMatrices = new float[6 * 8];
+    private int mSaveCount;
+
+    // the path, in local coordinates, as a verb and up to 7 arguments per entry
+    private float[] mPath = new float[64];
+    private int mPathSize;
+
+    // the shape being filled, as contours of device coordinates
+    private float[] mPoints = new float[256];
+    private int mPointCount;
+    private int[] mContourEnds = new int[16];
+    private int mContourCount;
+    private boolean mContourOpen;
+    private float mMoveX, mMoveY;
+
+    // scanline state
+    private float[] mCrossings = new float[32];
+    private int[] mWindings = new int[32];
+    private float[] mCoverage;
+
+    /**
+     * Creates a canvas of the given size, initially transparent, that fills shapes of color
+     * index i with the ARGB color colors[i].
+     */
+    public RasterGlyphCanvas(int width, int height, int[] colors, boolean antiAlias) {
+        mWidth = width;
+        mHeight = height;
+        mPixels = new int[width * height];
+        mColors = colors.clone();
+        mAntiAlias = antiAlias;
+        mCoverage = new float[width + 1];
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Returns the pixels, row by row, as non-premultiplied ARGB.
+     */
+    public int[] getPixels() {
+        return mPixels;
+    }
+
+    /**
+     * Clears every pixel to transparent and resets the transform.
+     */
+    public void clear() {
+        Arrays.fill(mPixels, 0);
+        mMatrix[0] = mMatrix[3] = 1;
+        mMatrix[1] = mMatrix[2] = mMatrix[4] = mMatrix[5] = 0;
+        mSaveCount = 0;
+    }
+
+    /*
+        Transforms
+     */
+
+    @Override
+    public void save() {
+        if (6 * mSaveCount + 6 > mSavedMatrices.length) {
+            mSavedMatrices = Arrays.copyOf(mSavedMatrices, 2 * mSavedMatrices.length);
+        }
+        System.arraycopy(mMatrix, 0, mSavedMatrices, 6 * mSaveCount, 6);
+        ++mSaveCount;
+    }
+
+    @Override
+    public void restore() {
+        if (mSaveCount > 0) {
+            --mSaveCount;
+            System.arraycopy(mSavedMatrices, 6 * mSaveCount, mMatrix, 0, 6);
+        }
+    }
+
+    @Override
+    public void translate(float dx, float dy) {
+        concat(1, 0, 0, 1, dx, dy);
+    }
+
+    @Override
+    public void rotate(float degrees, float px, float py) {
+        double radians = Math.toRadians(degrees);
+        float cos = (float) Math.cos(radians);
+        float sin = (float) Math.sin(radians);
+        translate(px, py);
+        concat(cos, sin, -sin, cos, 0, 0);
+        translate(-px, -py);
+    }
+
+    @Override
+    public void scale(float sx, float sy, float px, float py) {
+        translate(px, py);
+        concat(sx, 0, 0, sy, 0, 0);
+        translate(-px, -py);
+    }
+
+    /**
+     * Applies the given transform before the current one, like the Canvas methods do.
+     */
+    private void concat(float a, float b, float c, float d, float e, float f) {
+        float[] m = mMatrix;
+        float ma = m[0], mb = m[1], mc = m[2], md = m[3];
+        m[0] = ma * a + mc * b;
+        m[1] = mb * a + md * b;
+        m[2] = ma * c + mc * d;
+        m[3] = mb * c + md * d;
+        m[4] += ma * e + mc * f;
+        m[5] += mb * e + md * f;
+    }
+
+    /**
+     * Returns the curve flattening tolerance in local units, from the transform's largest scale.
+     */
+    private float getLocalTolerance() {
+        float[] m = mMatrix;
+        float scale = (float) Math.sqrt(Math.max(
+                m[0] * m[0] + m[1] * m[1], m[2] * m[2] + m[3] * m[3]));
+        return (scale > 0) ? GlyphFlattener.TOLERANCE_PX / scale : Float.MAX_VALUE;
+    }
+
+    /*
+        Paths
+     */
+
+    @Override
+    public void pathReset() {
+        mPathSize = 0;
+    }
+
+    @Override
+    public void pathMoveTo(float x, float y) {
+        putPathVerb(PATH_MOVE, x, y, 0, 0, 0, 0, 0);
+    }
+
+    @Override
+    public void pathLineTo(float x, float y) {
+        putPathVerb(PATH_LINE, x, y, 0, 0, 0, 0, 0);
+    }
+
+    @Override
+    public void pathArcTo(float l, float t, float r, float b, float startAngle, float sweepAngle,
+                          boolean forceMoveTo) {
+        putPathVerb(PATH_ARC, l, t, r, b, startAngle, sweepAngle, forceMoveTo ? 1 : 0);
+    }
+
+    @Override
+    public void pathClose() {
+        putPathVerb(PATH_CLOSE, 0, 0, 0, 0, 0, 0, 0);
+    }
+
+    private void putPathVerb(int verb, float a, float b, float c, float d, float e, float f,
+                             float g) {
+        if (mPathSize + 8 > mPath.length) {
+            mPath = Arrays.copyOf(mPath, 2 * mPath.length);
+        }
+        float[] p = mPath;
+        p[mPathSize] = verb;
+        p[mPathSize + 1] = a;
+        p[mPathSize + 2] = b;
+        p[mPathSize + 3] = c;
+        p[mPathSize + 4] = d;
+        p[mPathSize + 5] = e;
+        p[mPathSize + 6] = f;
+        p[mPathSize + 7] = g;
+        mPathSize += 8;
+    }
+
+    /*
+        Shapes
+     */
+
+    @Override
+    public void drawRect(float l, float t, float r, float b, int color) {
+        beginShape();
+        moveTo(l, t);
+        lineTo(r, t);
+        lineTo(r, b);
+        lineTo(l, b);
+        fill(color);
+    }
+
+    @Override
+    public void drawArc(float l, float t, float r, float b, float startAngle, float sweepAngle,
+                        boolean useCenter, int color) {
+        if (sweepAngle == 0) {
+            return; // like Canvas.drawArc, draw nothing
+        }
+
+        beginShape();
+        if (Math.abs(sweepAngle) >= 360) {
+            arcTo(l, t, r, b, 0, 360, true);
+        } else if (useCenter) {
+            moveTo((l + r) / 2, (t + b) / 2);
+            arcTo(l, t, r, b, startAngle, sweepAngle, false);
+        } else {
+            arcTo(l, t, r, b, startAngle, sweepAngle, true);
+        }
+        fill(color);
+    }
+
+    @Override
+    public void drawOval(float l, float t, float r, float b, int color) {
+        beginShape();
+        arcTo(l, t, r, b, 0, 360, true);
+        fill(color);
+    }
+
+    @Override
+    public void drawRoundRect(float l, float t, float r, float b, float rx, float ry,
+                              int color) {
+        rx = Math.min(Math.abs(rx), Math.abs(r - l) / 2);
+        ry = Math.min(Math.abs(ry), Math.abs(b - t) / 2);
+        beginShape();
+        arcTo(r - 2 * rx, t, r, t + 2 * ry, -90, 90, true);
+        arcTo(r - 2 * rx, b - 2 * ry, r, b, 0, 90, false);
+        arcTo(l, b - 2 * ry, l + 2 * rx, b, 90, 90, false);
+        arcTo(l, t, l + 2 * rx, t + 2 * ry, 180, 90, false);
+        fill(color);
+    }
+
+    @Override
+    public void drawPath(int color) {
+        beginShape();
+        float[] p = mPath;
+        for (int i = 0; i < mPathSize; i += 8) {
+            switch ((int) p[i]) {
+                case PATH_MOVE:
+                    moveTo(p[i + 1], p[i + 2]);
+                    break;
+                case PATH_LINE:
+                    lineTo(p[i + 1], p[i + 2]);
+                    break;
+                case PATH_ARC:
+                    arcTo(p[i + 1], p[i + 2], p[i + 3], p[i + 4], p[i + 5], p[i + 6],
+                            p[i + 7] != 0);
+                    break;
+                case PATH_CLOSE:
+                    closeContour();
+                    break;
+            }
+        }
+        fill(color);
+    }
+
+    /*
+        Flattening into device coordinates
+     */
+
+    private void beginShape() {
+        mPointCount = 0;
+        mContourCount = 0;
+        mContourOpen = false;
+        mMoveX = mMoveY = 0;
+    }
+
+    private void moveTo(float x, float y) {
+        closeContour();
+        mMoveX = x;
+        mMoveY = y;
+        addPoint(x, y);
+        mContourOpen = true;
+    }
+
+    private void lineTo(float x, float y) {
+        if (!mContourOpen) {
+            // like Path.lineTo, continue from the last move (or the origin)
+            moveTo(mMoveX, mMoveY);
+        }
+        addPoint(x, y);
+    }
+
+    private void arcTo(float l, float t, float r, float b, float startAngle, float sweepAngle,
+                       boolean forceMoveTo) {
+        float cx = (l + r) / 2, cy = (t + b) / 2, rx = (r - l) / 2, ry = (b - t) / 2;
+        double start = Math.toRadians(startAngle);
+        double sweep = Math.toRadians(sweepAngle);
+        int segments = GlyphFlattener.getArcSegments(rx, ry, sweepAngle, getLocalTolerance());
+        for (int i = 0; i <= segments; i++) {
+            double a = start + sweep * i / segments;
+            float x = cx + rx * (float) Math.cos(a);
+            float y = cy + ry * (float) Math.sin(a);
+            if (i == 0 && (forceMoveTo || mPointCount == 0)) {
+                // like Path.arcTo, move to the start only when forced or the path is empty
+                moveTo(x, y);
+            } else {
+                lineTo(x, y);
+            }
+        }
+    }
+
+    private void closeContour() {
+        if (!mContourOpen) {
+            return;
+        }
+        mContourOpen = false;
+        if (mContourCount == mContourEnds.length) {
+            mContourEnds = Arrays.copyOf(mContourEnds, 2 * mContourEnds.length);
+        }
+        mContourEnds[mContourCount++] = mPointCount;
+    }
+
+    private void addPoint(float x, float y) {
+        if (2 * mPointCount + 2 > mPoints.length) {
+            mPoints = Arrays.copyOf(mPoints, 2 * mPoints.length);
+        }
+        float[] m = mMatrix;
+        mPoints[2 * mPointCount] = m[0] * x + m[2] * y + m[4];
+        mPoints[2 * mPointCount + 1] = m[1] * x + m[3] * y + m[5];
+        ++mPointCount;
+    }
+
+    /*
+        Scanline filling
+     */
+
+    private void fill(int color) {
+        closeContour();
+        if (mPointCount < 3) {
+            return;
+        }
+
+        float minY = Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        for (int i = 0; i < mPointCount; i++) {
+            minY = Math.min(minY, mPoints[2 * i + 1]);
+            maxY = Math.max(maxY, mPoints[2 * i + 1]);
+        }
+
+        int firstRow = Math.max(0, (int) Math.floor(minY));
+        int lastRow = Math.min(mHeight - 1, (int) Math.ceil(maxY));
+        int samples = mAntiAlias ? SUBSAMPLES : 1;
+        int argb = mColors[color];
+        for (int row = firstRow; row <= lastRow; row++) {
+            int minX = mWidth, maxX = -1;
+            for (int s = 0; s < samples; s++) {
+                int count = findCrossings(row + (s + 0.5f) / samples);
+                int winding = 0;
+                for (int i = 0; i < count - 1; i++) {
+                    winding += mWindings[i];
+                    if (winding == 0) {
+                        continue;
+                    }
+                    float x1 = Math.max(0, mCrossings[i]);
+                    float x2 = Math.min(mWidth, mCrossings[i + 1]);
+                    if (x1 >= x2) {
+                        continue;
+                    }
+                    minX = Math.min(minX, (int) x1);
+                    maxX = Math.max(maxX, (int) Math.ceil(x2));
+                    if (mAntiAlias) {
+                        addCoverage(x1, x2, 1f / samples);
+                    } else {
+                        // pixels whose centers are in [x1, x2)
+                        for (int x = (int) Math.ceil(x1 - 0.5f); x + 0.5f < x2; x++) {
+                            mCoverage[x] = 1;
+                        }
+                    }
+                }
+            }
+
+            int offset = row * mWidth;
+            for (int x = Math.max(0, minX); x <= Math.min(mWidth - 1, maxX); x++) {
+                float coverage = Math.min(1, mCoverage[x]);
+                mCoverage[x] = 0;
+                if (coverage > 0) {
+                    mPixels[offset + x] = blend(mPixels[offset + x], argb, coverage);
+                }
+            }
+            mCoverage[mWidth] = 0;
+        }
+    }
+
+    /**
+     * Finds where the shape's edges cross the given horizontal line, sorted by x, along with
+     * each edge's winding direction, and returns how many there are.
+     */
+    private int findCrossings(float y) {
+        int count = 0;
+        int start = 0;
+        for (int c = 0; c < mContourCount; c++) {
+            int end = mContourEnds[c];
+            for (int i = start; i < end; i++) {
+                int j = (i + 1 < end) ? i + 1 : start; // the closing edge back to the start
+                float x1 = mPoints[2 * i], y1 = mPoints[2 * i + 1];
+                float x2 = mPoints[2 * j], y2 = mPoints[2 * j + 1];
+                int winding;
+                if (y1 <= y && y < y2) {
+                    winding = 1;
+                } else if (y2 <= y && y < y1) {
+                    winding = -1;
+                } else {
+                    continue;
+                }
+
+                // always interpolate from the top end, so that an edge shared by two contours,
+                // running in opposite directions, crosses at exactly the same x in both
+                float x = (y1 < y2)
+                        ? x1 + (y - y1) * (x2 - x1) / (y2 - y1)
+                        : x2 + (y - y2) * (x1 - x2) / (y1 - y2);
+                if (count == mCrossings.length) {
+                    mCrossings = Arrays.copyOf(mCrossings, 2 * count);
+                    mWindings = Arrays.copyOf(mWindings, 2 * count);
+                }
+
+                // insertion sort; there are only ever a handful of crossings
+                int k = count++;
+                while (k > 0 && mCrossings[k - 1] > x) {
+                    mCrossings[k] = mCrossings[k - 1];
+                    mWindings[k] = mWindings[k - 1];
+                    --k;
+                }
+                mCrossings[k] = x;
+                mWindings[k] = winding;
+            }
+            start = end;
+        }
+        return count;
+    }
+
+    /**
+     * Adds the given weight of coverage for the span [x1, x2), partially covering the pixels at
+     * either end.
+     */
+    private void addCoverage(float x1, float x2, float weight) {
+        int first = (int) x1;
+        int last = (int) x2;
+        if (first == last) {
+            mCoverage[first] += (x2 - x1) * weight;
+            return;
+        }
+
+        mCoverage[first] += (first + 1 - x1) * weight;
+        for (int x = first + 1; x < last; x++) {
+            mCoverage[x] += weight;
+        }
+        mCoverage[last] += (x2 - last) * weight;
+    }
+
+    /**
+     * Draws the given color over the given pixel with the given coverage (source over).
+     */
+    private static int blend(int dst, int src, float coverage) {
+        float sa = (src >>> 24) / 255f * coverage;
+        float da = (dst >>> 24) / 255f;
+        float dw = da * (1 - sa);
+        float a = sa + dw;
+        if (a <= 0) {
+            return 0;
+        }
+
+        int r = Math.round((((src >> 16) & 0xff) * sa + ((dst >> 16) & 0xff) * dw) / a);
+        int g = Math.round((((src >> 8) & 0xff) * sa + ((dst >> 8) & 0xff) * dw) / a);
+        int b = Math.round(((src & 0xff) * sa + (dst & 0xff) * dw) / a);
+        return (Math.round(a * 255) << 24) | (r << 16) | (g << 8) | b;
+    }
+}
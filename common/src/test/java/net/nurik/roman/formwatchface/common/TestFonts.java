@@ -0,0 +1,62 @@
+/*
+ * Copyright 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.nurik.roman.formwatchface.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+import static net.nurik.roman.formwatchface.common.FormClockRenderer.Font;
+
+/**
+ * Loads the default glyph set straight from the module's assets, for tests running on the JVM,
+ * where there's no {@link android.content.Context} to load it through.
+ */
+class TestFonts {
+    private static GlyphSet sGlyphSet;
+    private static Font sFont;
+
+    private TestFonts() {
+    }
+
+    static synchronized GlyphSet getGlyphSet() {
+        if (sGlyphSet == null) {
+            // unit tests run with the module directory as the working directory
+            File file = new File("src/main/assets", GlyphSet.ASSET_NAME);
+            try {
+                RandomAccessFile in = new RandomAccessFile(file, "r");
+                try {
+                    sGlyphSet = new GlyphSet(in.getChannel().map(
+                            FileChannel.MapMode.READ_ONLY, 0, in.length()));
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Couldn't load glyphs from " + file, e);
+            }
+        }
+        return sGlyphSet;
+    }
+
+    static synchronized Font getFont() {
+        if (sFont == null) {
+            sFont = new Font(getGlyphSet());
+        }
+        return sFont;
+    }
+}
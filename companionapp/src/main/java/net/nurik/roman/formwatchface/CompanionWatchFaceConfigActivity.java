@@ -41,6 +41,7 @@ import android.view.ViewGroup;
 import android.widget.ImageButton;
 import android.widget.ImageView;
 
+import net.nurik.roman.formwatchface.common.ClockModel;
 import net.nurik.roman.formwatchface.common.FormClockView;
 import net.nurik.roman.formwatchface.common.MathUtil;
 import net.nurik.roman.formwatchface.common.MuzeiArtworkImageLoader;
@@ -114,6 +115,11 @@ public class CompanionWatchFaceConfigActivity extends AppCompatActivity
         mAnimateClockContainerView = (ViewGroup) ((ViewGroup) findViewById(R.id.clock_container)).getChildAt(1);
         mAnimateClockView = (FormClockView) mAnimateClockContainerView.findViewById(R.id.clock);
 
+        // both clocks are visible during the reveal animation; keep them on the same instant
+        ClockModel clockModel = new ClockModel();
+        mMainClockView.setClockModel(clockModel);
+        mAnimateClockView.setClockModel(clockModel);
+
         mAnimateClockContainerView.setVisibility(View.INVISIBLE);
 
         setupThemeList();
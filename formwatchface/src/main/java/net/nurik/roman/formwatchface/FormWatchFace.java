@@ -25,6 +25,7 @@ import android.content.IntentFilter;
 import android.content.Loader;
 import android.content.SharedPreferences;
 import android.database.ContentObserver;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
@@ -52,12 +53,17 @@ import android.view.animation.DecelerateInterpolator;
 
 import com.google.android.apps.muzei.api.MuzeiContract;
 
+import net.nurik.roman.formwatchface.common.ClockModel;
+import net.nurik.roman.formwatchface.common.ClockSource;
 import net.nurik.roman.formwatchface.common.FormClockRenderer;
+import net.nurik.roman.formwatchface.common.GlyphBitmapPool;
 import net.nurik.roman.formwatchface.common.MathUtil;
 import net.nurik.roman.formwatchface.common.config.ConfigHelper;
 import net.nurik.roman.formwatchface.common.config.Themes;
 
 import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
 
 import static net.nurik.roman.formwatchface.LogUtil.LOGD;
 import static net.nurik.roman.formwatchface.common.FormClockRenderer.ClockPaints;
@@ -79,6 +85,14 @@ public class FormWatchFace extends CanvasWatchFaceService {
         return new Engine();
     }
 
+    /**
+     * Returns where the watch face gets the current time from. Can be overridden, e.g. to drive
+     * the watch face from a {@link net.nurik.roman.formwatchface.common.VirtualClockSource}.
+     */
+    protected ClockSource createClockSource() {
+        return ClockSource.SYSTEM;
+    }
+
     private class Engine extends CanvasWatchFaceService.Engine {
         private Paint mAmbientBackgroundPaint;
         private Paint mBackgroundPaint;
@@ -87,6 +101,9 @@ public class FormWatchFace extends CanvasWatchFaceService {
         private Rect mCardBounds = new Rect();
         private ValueAnimator mBottomBoundAnimator = new ValueAnimator();
         private ValueAnimator mSecondsAlphaAnimator = new ValueAnimator();
+        // animated values, cached so that reading them while drawing doesn't box floats
+        private float mBottomBound;
+        private float mSecondsAlpha;
         private int mWidth = 0;
         private int mHeight = 0;
         private int mDisplayMetricsWidth = 0;
@@ -100,11 +117,15 @@ public class FormWatchFace extends CanvasWatchFaceService {
         private LoadedArtwork mMuzeiLoadedArtwork;
 
         // FORM clock renderer specific stuff
+        private ClockModel mClockModel = new ClockModel(createClockSource());
         private FormClockRenderer mHourMinRenderer;
         private FormClockRenderer mSecondsRenderer;
         private long mUpdateThemeStartAnimTimeMillis;
         private long mLastDrawTimeMin;
+        private Calendar mDateCalendar = Calendar.getInstance();
+        private int mDateStrDay = -1;
         private String mDateStr;
+        private float mClockSecondsSpacing;
 
         /**
          * Whether the display supports fewer bits for each color in ambient mode. When true, we
@@ -123,14 +144,42 @@ public class FormWatchFace extends CanvasWatchFaceService {
         private boolean mDrawMuzeiBitmap;
         private Theme mCurrentTheme;
         private Theme mAnimateFromTheme;
+        private Map<Theme, int[]> mThemeColors = new HashMap<>();
         private Path mUpdateThemeClipPath = new Path();
         private RectF mTempRectF = new RectF();
 
+        // Retained layers for interactive mode. The backdrop layer holds the background and Muzei
+        // artwork; the static layer holds the backdrop plus the settled hour/minute glyphs and the
+        // date. Each is only redrawn when invalidated, so most frames are one opaque blit plus
+        // whichever glyphs are animating.
+        private Bitmap mBackdropLayer;
+        private Canvas mBackdropLayerCanvas;
+        private boolean mBackdropLayerDirty = true;
+        private Bitmap mStaticLayer;
+        private Canvas mStaticLayerCanvas;
+        private boolean mStaticLayerDirty = true;
+        private int mStaticLayerHourMinGeneration;
+        private float mStaticLayerBottomBound;
+        private String mStaticLayerDateStr;
+
         @Override
         public void onCreate(SurfaceHolder holder) {
             LOGD(TAG, "onCreate");
             super.onCreate(holder);
 
+            mBottomBoundAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+                @Override
+                public void onAnimationUpdate(ValueAnimator animation) {
+                    mBottomBound = (Float) animation.getAnimatedValue();
+                }
+            });
+            mSecondsAlphaAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+                @Override
+                public void onAnimationUpdate(ValueAnimator animation) {
+                    mSecondsAlpha = (Float) animation.getAnimatedValue();
+                }
+            });
+
             updateDateStr();
 
             mMute = getInterruptionFilter() == WatchFaceService.INTERRUPTION_FILTER_NONE;
@@ -153,9 +202,28 @@ public class FormWatchFace extends CanvasWatchFaceService {
             unregisterSharedPrefsListener();
             unregisterTimeZoneReceiver();
             destroyMuzei();
+            releaseClockRenderers();
+            releaseLayers();
+            GlyphBitmapPool.trim();
+        }
+
+        /**
+         * Returns the renderers' offscreen bitmaps to the shared pool, so that new renderers
+         * (or another engine) can reuse them.
+         */
+        private void releaseClockRenderers() {
+            if (mHourMinRenderer != null) {
+                mHourMinRenderer.release();
+            }
+
+            if (mSecondsRenderer != null) {
+                mSecondsRenderer.release();
+            }
         }
 
         private void initClockRenderers() {
+            releaseClockRenderers();
+
             // Init paints
             mAmbientBackgroundPaint = new Paint();
             mAmbientBackgroundPaint.setColor(Color.BLACK);
@@ -182,8 +250,13 @@ public class FormWatchFace extends CanvasWatchFaceService {
             options.charSpacing = getResources().getDimensionPixelSize(R.dimen.main_clock_spacing);
             options.glyphAnimAverageDelay = getResources().getInteger(R.integer.main_clock_glyph_anim_delay);
             options.glyphAnimDuration = getResources().getInteger(R.integer.main_clock_glyph_anim_duration);
+            // fills are never tessellated here: the only non-anti-aliased fills (low-bit ambient
+            // and burn-in protection) are drawn as one union outline path instead
+            options.batchDrawCalls = true;
+            options.maxSimplifiedTextSize = getResources().getDimension(R.dimen.max_simplified_clock_height);
 
-            mHourMinRenderer = new FormClockRenderer(options, mNormalPaints);
+            mHourMinRenderer = new FormClockRenderer(FormWatchFace.this, options, mNormalPaints);
+            mHourMinRenderer.setClockModel(mClockModel);
 
             options = new FormClockRenderer.Options(options);
             options.textSize = getResources().getDimensionPixelSize(R.dimen.seconds_clock_height);
@@ -191,8 +264,18 @@ public class FormWatchFace extends CanvasWatchFaceService {
             options.charSpacing = getResources().getDimensionPixelSize(R.dimen.seconds_clock_spacing);
             options.glyphAnimAverageDelay = getResources().getInteger(R.integer.seconds_clock_glyph_anim_delay);
             options.glyphAnimDuration = getResources().getInteger(R.integer.seconds_clock_glyph_anim_duration);
+            options.bakedTransitionFrames = getResources().getInteger(R.integer.seconds_clock_baked_transition_frames);
+            options.bakedTransitionCacheBytes = 1024 * getResources().getInteger(R.integer.seconds_clock_baked_transition_cache_kb);
 
-            mSecondsRenderer = new FormClockRenderer(options, mNormalPaints);
+            mSecondsRenderer = new FormClockRenderer(FormWatchFace.this, options, mNormalPaints);
+            mSecondsRenderer.setClockModel(mClockModel);
+
+            mClockSecondsSpacing = getResources().getDimension(R.dimen.clock_seconds_spacing);
+            invalidateLayers();
+
+            LOGD(TAG, "initClockRenderers: offscreen bitmap pool = "
+                    + GlyphBitmapPool.getAllocatedBytes() / 1024 + "KB ("
+                    + GlyphBitmapPool.getFreeBytes() / 1024 + "KB free)");
         }
 
         private void handleConfigUpdated() {
@@ -209,6 +292,7 @@ public class FormWatchFace extends CanvasWatchFaceService {
             mShowSeconds = sp.getBoolean(ConfigHelper.KEY_SHOW_SECONDS, false);
             mShowDate = sp.getBoolean(ConfigHelper.KEY_SHOW_DATE, false);
 
+            invalidateLayers();
             updateWatchFaceStyle();
             postInvalidate();
         }
@@ -245,6 +329,8 @@ public class FormWatchFace extends CanvasWatchFaceService {
             mSecondsAlphaAnimator.setFloatValues(1f, 1f);
             mSecondsAlphaAnimator.setDuration(0);
             mSecondsAlphaAnimator.start();
+
+            invalidateLayers();
         }
 
         @Override
@@ -299,6 +385,7 @@ public class FormWatchFace extends CanvasWatchFaceService {
                 } else {
                     mMuzeiLoadedArtwork = null;
                 }
+                invalidateLayers();
                 postInvalidate();
             }
         };
@@ -357,7 +444,10 @@ public class FormWatchFace extends CanvasWatchFaceService {
             public void onReceive(Context context, Intent intent) {
                 final String action = intent.getAction();
                 if (Intent.ACTION_TIMEZONE_CHANGED.equals(action)) {
-                    initClockRenderers();
+                    mDateCalendar = Calendar.getInstance();
+                    mDateStrDay = -1;
+                    updateDateStr();
+                    mClockModel.onTimeZoneChanged();
                     postInvalidate();
                 }
             }
@@ -398,6 +488,7 @@ public class FormWatchFace extends CanvasWatchFaceService {
                 mAmbientPaints.strokes[0] = mAmbientPaints.strokes[1] = mAmbientPaints.strokes[2]
                         = paint;
                 mAmbientPaints.hasStroke = true;
+                mAmbientPaints.unionOutlines = true;
 
             } else {
                 paint.setAntiAlias(true);
@@ -428,14 +519,14 @@ public class FormWatchFace extends CanvasWatchFaceService {
 
                 mBottomBoundAnimator.cancel();
                 mBottomBoundAnimator.setFloatValues(
-                        (Float) mBottomBoundAnimator.getAnimatedValue(),
+                        mBottomBound,
                         mCardBounds.top > 0 ? mCardBounds.top : mHeight);
                 mBottomBoundAnimator.setDuration(200);
                 mBottomBoundAnimator.start();
 
                 mSecondsAlphaAnimator.cancel();
                 mSecondsAlphaAnimator.setFloatValues(
-                        (Float) mSecondsAlphaAnimator.getAnimatedValue(),
+                        mSecondsAlpha,
                         mCardBounds.top > 0 ? 0f : 1f);
                 mSecondsAlphaAnimator.setDuration(200);
                 mSecondsAlphaAnimator.start();
@@ -456,6 +547,11 @@ public class FormWatchFace extends CanvasWatchFaceService {
         public void onAmbientModeChanged(boolean inAmbientMode) {
             LOGD(TAG, "onAmbientModeChanged: " + inAmbientMode);
             super.onAmbientModeChanged(inAmbientMode);
+            if (inAmbientMode) {
+                // ambient mode draws directly, so don't hold on to two full-screen bitmaps
+                releaseLayers();
+            }
+            invalidateLayers();
             postInvalidate();
         }
 
@@ -481,7 +577,8 @@ public class FormWatchFace extends CanvasWatchFaceService {
 
             // Figure out what to animate
             long currentTimeMillis = System.currentTimeMillis();
-            long currentTimeMin = currentTimeMillis / 60000;
+            mClockModel.update();
+            long currentTimeMin = mClockModel.getTimeMillis() / 60000;
             if (currentTimeMin != mLastDrawTimeMin) {
                 mLastDrawTimeMin = currentTimeMin;
                 updateDateStr();
@@ -509,8 +606,7 @@ public class FormWatchFace extends CanvasWatchFaceService {
 
                     mUpdateThemeClipPath.reset();
                     float cx = mWidth / 2;
-                    float bottom = (Float) mBottomBoundAnimator.getAnimatedValue();
-                    float cy = bottom / 2;
+                    float cy = mBottomBound / 2;
                     float maxRadius = MathUtil.maxDistanceToCorner(0, 0, mWidth, mHeight, cx, cy);
                     float radius = interpolate(
                             decelerate3(constrain(
@@ -525,18 +621,18 @@ public class FormWatchFace extends CanvasWatchFaceService {
                 }
 
                 updatePaintsForTheme(mCurrentTheme);
-                drawClock(canvas);
-
                 if (sc >= 0) {
+                    drawClock(canvas);
                     canvas.restoreToCount(sc);
+                } else {
+                    drawClockLayers(canvas);
                 }
             }
 
             if (mBottomBoundAnimator.isRunning() || isAnimatingThemeChange()) {
                 postInvalidate();
             } else if (isVisible() && !ambientMode) {
-                float secondsOpacity = (Float) mSecondsAlphaAnimator.getAnimatedValue();
-                boolean showingSeconds = mShowSeconds && secondsOpacity > 0;
+                boolean showingSeconds = mShowSeconds && mSecondsAlpha > 0;
                 long timeToNextSecondsAnimation = showingSeconds
                         ? mSecondsRenderer.timeToNextAnimation()
                         : 10000;
@@ -557,7 +653,29 @@ public class FormWatchFace extends CanvasWatchFaceService {
         }
 
         private void updateDateStr() {
-            mDateStr = DateFormat.format("EEE d", Calendar.getInstance()).toString().toUpperCase();
+            // the date string only changes once a day, so avoid reformatting it every minute
+            mDateCalendar.setTimeInMillis(mClockModel.getTimeMillis());
+            int day = mDateCalendar.get(Calendar.YEAR) * 1000
+                    + mDateCalendar.get(Calendar.DAY_OF_YEAR);
+            if (day != mDateStrDay) {
+                mDateStrDay = day;
+                mDateStr = DateFormat.format("EEE d", mDateCalendar).toString().toUpperCase();
+            }
+        }
+
+        /**
+         * Returns the dark, light and mid colors of the given theme, resolving them only once.
+         */
+        private int[] getThemeColors(Theme theme) {
+            int[] colors = mThemeColors.get(theme);
+            if (colors == null) {
+                colors = new int[]{
+                        getResources().getColor(theme.darkRes),
+                        getResources().getColor(theme.lightRes),
+                        getResources().getColor(theme.midRes)};
+                mThemeColors.put(theme, colors);
+            }
+            return colors;
         }
 
         private void updatePaintsForTheme(Theme theme) {
@@ -571,22 +689,100 @@ public class FormWatchFace extends CanvasWatchFaceService {
                 }
                 mDrawMuzeiBitmap = true;
             } else {
-                mBackgroundPaint.setColor(getResources().getColor(theme.darkRes));
-                mNormalPaints.fills[0].setColor(getResources().getColor(theme.lightRes));
-                mNormalPaints.fills[1].setColor(getResources().getColor(theme.midRes));
+                int[] colors = getThemeColors(theme);
+                mBackgroundPaint.setColor(colors[0]);
+                mNormalPaints.fills[0].setColor(colors[1]);
+                mNormalPaints.fills[1].setColor(colors[2]);
                 mNormalPaints.fills[2].setColor(Color.WHITE);
-                mNormalPaints.date.setColor(getResources().getColor(theme.lightRes));
+                mNormalPaints.date.setColor(colors[1]);
                 mDrawMuzeiBitmap = false;
             }
         }
 
+        private void invalidateLayers() {
+            mBackdropLayerDirty = true;
+            mStaticLayerDirty = true;
+        }
+
+        private void releaseLayers() {
+            if (mBackdropLayer != null) {
+                mBackdropLayer.recycle();
+                mBackdropLayer = null;
+                mBackdropLayerCanvas = null;
+            }
+
+            if (mStaticLayer != null) {
+                mStaticLayer.recycle();
+                mStaticLayer = null;
+                mStaticLayerCanvas = null;
+            }
+        }
+
+        /**
+         * Draws the whole clock directly to the given canvas, without using any retained layers.
+         * Used in ambient mode and while revealing a new theme.
+         */
         private void drawClock(Canvas canvas) {
-            boolean ambientMode = isInAmbientMode();
-            boolean offscreenGlyphs = !ambientMode;
+            boolean allowAnimate = !isInAmbientMode();
 
-            boolean allowAnimate = !ambientMode;
+            drawBackdrop(canvas);
+            PointF hourMinSize = mHourMinRenderer.measure(allowAnimate);
+            drawHourMin(canvas, hourMinSize);
+            drawSeconds(canvas, hourMinSize);
+            drawDate(canvas, hourMinSize);
+        }
 
-            if (ambientMode) {
+        /**
+         * Draws the clock in interactive mode, redrawing the retained layers only if they're
+         * invalid and then drawing whatever is animating on top.
+         */
+        private void drawClockLayers(Canvas canvas) {
+            if (mBackdropLayer == null
+                    || mBackdropLayer.getWidth() != mWidth
+                    || mBackdropLayer.getHeight() != mHeight) {
+                mBackdropLayer = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.ARGB_8888);
+                mBackdropLayerCanvas = new Canvas(mBackdropLayer);
+                mStaticLayer = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.ARGB_8888);
+                mStaticLayerCanvas = new Canvas(mStaticLayer);
+                invalidateLayers();
+            }
+
+            if (mBackdropLayerDirty) {
+                drawBackdrop(mBackdropLayerCanvas);
+                mBackdropLayerDirty = false;
+                mStaticLayerDirty = true;
+            }
+
+            PointF hourMinSize = mHourMinRenderer.measure(true);
+            if (mHourMinRenderer.isAnimating(true) || mBottomBoundAnimator.isRunning()) {
+                // the hour/minute glyphs are moving (or the clock is sliding up or down for a
+                // peek card), and the date moves with them
+                canvas.drawBitmap(mBackdropLayer, 0, 0, null);
+                drawHourMin(canvas, hourMinSize);
+                drawDate(canvas, hourMinSize);
+            } else {
+                int hourMinGeneration = mHourMinRenderer.getLayoutGeneration();
+                if (mStaticLayerDirty
+                        || hourMinGeneration != mStaticLayerHourMinGeneration
+                        || mBottomBound != mStaticLayerBottomBound
+                        || mDateStr != mStaticLayerDateStr) {
+                    mStaticLayerCanvas.drawBitmap(mBackdropLayer, 0, 0, null);
+                    drawHourMin(mStaticLayerCanvas, hourMinSize);
+                    drawDate(mStaticLayerCanvas, hourMinSize);
+                    mStaticLayerHourMinGeneration = hourMinGeneration;
+                    mStaticLayerBottomBound = mBottomBound;
+                    mStaticLayerDateStr = mDateStr;
+                    mStaticLayerDirty = false;
+                }
+
+                canvas.drawBitmap(mStaticLayer, 0, 0, null);
+            }
+
+            drawSeconds(canvas, hourMinSize);
+        }
+
+        private void drawBackdrop(Canvas canvas) {
+            if (isInAmbientMode()) {
                 canvas.drawRect(0, 0, mWidth, mHeight, mAmbientBackgroundPaint);
             } else if (mDrawMuzeiBitmap && mMuzeiLoadedArtwork != null) {
                 canvas.drawRect(0, 0, mWidth, mHeight, mAmbientBackgroundPaint);
@@ -597,46 +793,53 @@ public class FormWatchFace extends CanvasWatchFaceService {
             } else {
                 canvas.drawRect(0, 0, mWidth, mHeight, mBackgroundPaint);
             }
+        }
 
-            float bottom = (Float) mBottomBoundAnimator.getAnimatedValue();
-
-            PointF hourMinSize = mHourMinRenderer.measure(allowAnimate);
+        private void drawHourMin(Canvas canvas, PointF hourMinSize) {
+            boolean ambientMode = isInAmbientMode();
             mHourMinRenderer.draw(canvas,
-                    (mWidth - hourMinSize.x) / 2, (bottom - hourMinSize.y) / 2,
-                    allowAnimate,
-                    offscreenGlyphs);
-
-            float clockSecondsSpacing = getResources().getDimension(R.dimen.clock_seconds_spacing);
-            float secondsOpacity = (Float) mSecondsAlphaAnimator.getAnimatedValue();
-            if (mShowSeconds && !ambientMode && secondsOpacity > 0) {
-                PointF secondsSize = mSecondsRenderer.measure(allowAnimate);
-                int sc = -1;
-                if (secondsOpacity != 1) {
-                    sc = canvas.saveLayerAlpha(0, 0, canvas.getWidth(), canvas.getHeight(),
-                            (int) (secondsOpacity * 255));
-                }
-                mSecondsRenderer.draw(canvas,
-                        (mWidth + hourMinSize.x) / 2 - secondsSize.x,
-                        (bottom + hourMinSize.y) / 2 + clockSecondsSpacing,
-                        allowAnimate,
-                        offscreenGlyphs);
-                if (sc >= 0) {
-                    canvas.restoreToCount(sc);
-                }
+                    (mWidth - hourMinSize.x) / 2, (mBottomBound - hourMinSize.y) / 2,
+                    !ambientMode,
+                    !ambientMode);
+        }
+
+        private void drawSeconds(Canvas canvas, PointF hourMinSize) {
+            float secondsOpacity = mSecondsAlpha;
+            if (!mShowSeconds || isInAmbientMode() || secondsOpacity <= 0) {
+                return;
             }
 
-            if (mShowDate) {
-                Paint paint = ambientMode ? mAmbientPaints.date : mNormalPaints.date;
-                float x = (mWidth - hourMinSize.x) / 2;
-                if (!mShowSeconds) {
-                    x = (mWidth - paint.measureText(mDateStr)) / 2;
-                }
-                canvas.drawText(
-                        mDateStr,
-                        x,
-                        (bottom + hourMinSize.y) / 2 + clockSecondsSpacing - paint.ascent(),
-                                paint);
+            PointF secondsSize = mSecondsRenderer.measure(true);
+            int sc = -1;
+            if (secondsOpacity != 1) {
+                sc = canvas.saveLayerAlpha(0, 0, canvas.getWidth(), canvas.getHeight(),
+                        (int) (secondsOpacity * 255));
+            }
+            mSecondsRenderer.draw(canvas,
+                    (mWidth + hourMinSize.x) / 2 - secondsSize.x,
+                    (mBottomBound + hourMinSize.y) / 2 + mClockSecondsSpacing,
+                    true,
+                    true);
+            if (sc >= 0) {
+                canvas.restoreToCount(sc);
+            }
+        }
+
+        private void drawDate(Canvas canvas, PointF hourMinSize) {
+            if (!mShowDate) {
+                return;
+            }
+
+            Paint paint = isInAmbientMode() ? mAmbientPaints.date : mNormalPaints.date;
+            float x = (mWidth - hourMinSize.x) / 2;
+            if (!mShowSeconds) {
+                x = (mWidth - paint.measureText(mDateStr)) / 2;
             }
+            canvas.drawText(
+                    mDateStr,
+                    x,
+                    (mBottomBound + hourMinSize.y) / 2 + mClockSecondsSpacing - paint.ascent(),
+                    paint);
         }
 
         private Handler mInvalidateHandler = new Handler() {
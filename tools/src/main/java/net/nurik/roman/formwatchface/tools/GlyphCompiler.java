@@ -0,0 +1,703 @@
+/*
+ * Copyright 2015 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.nurik.roman.formwatchface.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles a glyph source file (e.g. common/src/main/glyphs/form.glyphs) into the binary glyph
+ * set format read by the watch face (see GlyphSet in the common module). Run it whenever the
+ * glyph source changes:
+ *
+ * <pre>
+ * javac -d /tmp/glyphc tools/src/main/java/net/nurik/roman/formwatchface/tools/GlyphCompiler.java
+ * java -cp /tmp/glyphc net.nurik.roman.formwatchface.tools.GlyphCompiler \
+ *         common/src/main/glyphs/form.glyphs common/src/main/assets/form_glyphs.bin
+ * </pre>
+ *
+ * <p>Draw blocks use the same small subset of Java that glyphs were originally written in:
+ * float variables, if/else on a comparison, canvas.save/restore/translate/rotate/scale,
+ * scaleUniform, path.reset/moveTo/lineTo/close, arcTo, the drawRect/drawArc/drawOval/
+ * drawRoundRect/drawPath wrappers, and expressions built from interpolate, progress,
+ * decelerate5, accelerate5 and arithmetic.
+ */
+public class GlyphCompiler {
+    // must match GlyphSet
+    static final int MAGIC = 0x46474C59;
+    static final int VERSION = 1;
+
+    static final byte OP_END = 0;
+    static final byte OP_SET_VAR = 1;
+    static final byte OP_IF = 2;
+    static final byte OP_JUMP = 3;
+    static final byte OP_SAVE = 10;
+    static final byte OP_RESTORE = 11;
+    static final byte OP_TRANSLATE = 12;
+    static final byte OP_ROTATE = 13;
+    static final byte OP_SCALE = 14;
+    static final byte OP_PATH_RESET = 20;
+    static final byte OP_PATH_MOVE_TO = 21;
+    static final byte OP_PATH_LINE_TO = 22;
+    static final byte OP_PATH_ARC_TO = 23;
+    static final byte OP_PATH_CLOSE = 24;
+    static final byte OP_DRAW_RECT = 30;
+    static final byte OP_DRAW_ARC = 31;
+    static final byte OP_DRAW_OVAL = 32;
+    static final byte OP_DRAW_ROUND_RECT = 33;
+    static final byte OP_DRAW_PATH = 34;
+
+    static final String[] COMPARISONS = {">", "<", "==", ">=", "<=", "!="};
+
+    static final byte EXPR_CONST = 0;
+    static final byte EXPR_VAR = 1;
+    static final byte EXPR_ADD = 2;
+    static final byte EXPR_SUB = 3;
+    static final byte EXPR_MUL = 4;
+    static final byte EXPR_DIV = 5;
+    static final byte EXPR_NEG = 6;
+    static final byte EXPR_INTERPOLATE = 7;
+    static final byte EXPR_PROGRESS = 8;
+    static final byte EXPR_DECELERATE5 = 9;
+    static final byte EXPR_ACCELERATE5 = 10;
+
+    private List<String> mTokens = new ArrayList<>();
+    private List<Integer> mTokenLines = new ArrayList<>();
+    private int mPos;
+
+    private List<CompiledGlyph> mGlyphs = new ArrayList<>();
+    private Map<String, Integer> mGlyphIndices = new HashMap<>();
+    private List<String> mAliasKeys = new ArrayList<>();
+    private List<Integer> mAliasGlyphs = new ArrayList<>();
+
+    // state while compiling a glyph
+    private Map<String, Integer> mVars;
+    private ByteArrayOutputStream mCodeBytes;
+    private DataOutputStream mCode;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: GlyphCompiler <source.glyphs> <output.bin>");
+            System.exit(1);
+        }
+
+        String source = new String(Files.readAllBytes(Paths.get(args[0])),
+                Charset.forName("UTF-8"));
+        GlyphCompiler compiler = new GlyphCompiler();
+        compiler.compile(source);
+        FileOutputStream out = new FileOutputStream(args[1]);
+        try {
+            compiler.write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static class CompiledGlyph {
+        String key;
+        String start;
+        String end;
+        int varCount;
+        byte[] width;
+        byte[] code;
+    }
+
+    /*
+        Tokenizer
+     */
+
+    private void tokenize(String s) {
+        int line = 1;
+        int i = 0;
+        while (i < s.length()) {
+            char c = s.charAt(i);
+            if (c == '\n') {
+                ++line;
+                ++i;
+            } else if (Character.isWhitespace(c)) {
+                ++i;
+            } else if (s.startsWith("//", i)) {
+                while (i < s.length() && s.charAt(i) != '\n') {
+                    ++i;
+                }
+            } else if (s.startsWith("/*", i)) {
+                int end = s.indexOf("*/", i) + 2;
+                for (int j = i; j < end; j++) {
+                    if (s.charAt(j) == '\n') {
+                        ++line;
+                    }
+                }
+                i = end;
+            } else if (c == '"') {
+                int end = s.indexOf('"', i + 1) + 1;
+                addToken(s.substring(i, end), line);
+                i = end;
+            } else if (Character.isDigit(c) || (c == '.' && Character.isDigit(s.charAt(i + 1)))) {
+                int start = i;
+                while (i < s.length() && (Character.isDigit(s.charAt(i)) || s.charAt(i) == '.')) {
+                    ++i;
+                }
+                addToken(s.substring(start, i), line);
+                if (i < s.length() && (s.charAt(i) == 'f' || s.charAt(i) == 'F')) {
+                    ++i; // float suffix
+                }
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int start = i;
+                while (i < s.length() && (Character.isJavaIdentifierPart(s.charAt(i))
+                        || s.charAt(i) == '.')) {
+                    ++i;
+                }
+                addToken(s.substring(start, i), line);
+            } else if ("=<>!".indexOf(c) >= 0 && i + 1 < s.length() && s.charAt(i + 1) == '=') {
+                addToken(s.substring(i, i + 2), line);
+                i += 2;
+            } else {
+                addToken(String.valueOf(c), line);
+                ++i;
+            }
+        }
+    }
+
+    private void addToken(String token, int line) {
+        mTokens.add(token);
+        mTokenLines.add(line);
+    }
+
+    private String peek() {
+        return mPos < mTokens.size() ? mTokens.get(mPos) : null;
+    }
+
+    private String next() {
+        if (mPos >= mTokens.size()) {
+            throw new IllegalArgumentException("Unexpected end of file");
+        }
+        return mTokens.get(mPos++);
+    }
+
+    private void expect(String token) {
+        String actual = next();
+        if (!token.equals(actual)) {
+            throw error("Expected '" + token + "' but got '" + actual + "'");
+        }
+    }
+
+    private boolean accept(String token) {
+        if (token.equals(peek())) {
+            ++mPos;
+            return true;
+        }
+        return false;
+    }
+
+    private String nextString() {
+        String token = next();
+        if (!token.startsWith("\"")) {
+            throw error("Expected a string but got '" + token + "'");
+        }
+        return token.substring(1, token.length() - 1);
+    }
+
+    private IllegalArgumentException error(String message) {
+        int line = mTokenLines.get(Math.min(mPos, mTokens.size()) - 1);
+        return new IllegalArgumentException("line " + line + ": " + message);
+    }
+
+    /*
+        Parser and code generator
+     */
+
+    public void compile(String source) throws IOException {
+        tokenize(source);
+        while (peek() != null) {
+            String keyword = next();
+            if ("glyph".equals(keyword)) {
+                compileGlyph();
+            } else if ("alias".equals(keyword)) {
+                String key = nextString();
+                expect("=");
+                String target = nextString();
+                expect(";");
+                Integer index = mGlyphIndices.get(target);
+                if (index == null) {
+                    throw error("Unknown glyph " + target);
+                }
+                mAliasKeys.add(key);
+                mAliasGlyphs.add(index);
+            } else {
+                throw error("Expected 'glyph' or 'alias' but got '" + keyword + "'");
+            }
+        }
+    }
+
+    private void compileGlyph() throws IOException {
+        CompiledGlyph glyph = new CompiledGlyph();
+        glyph.key = nextString();
+        expect("start");
+        glyph.start = nextString();
+        expect("end");
+        glyph.end = nextString();
+        expect("{");
+
+        mVars = new HashMap<>();
+        mVars.put("t", 0);
+
+        expect("width");
+        beginCode();
+        emitExpr(parseExpr());
+        expect(";");
+        glyph.width = mCodeBytes.toByteArray();
+
+        expect("draw");
+        beginCode();
+        compileBlock();
+        mCode.writeByte(OP_END);
+        glyph.code = mCodeBytes.toByteArray();
+        glyph.varCount = mVars.size();
+
+        expect("}");
+
+        mGlyphIndices.put(glyph.key, mGlyphs.size());
+        mGlyphs.add(glyph);
+    }
+
+    private void beginCode() {
+        mCodeBytes = new ByteArrayOutputStream();
+        mCode = new DataOutputStream(mCodeBytes);
+    }
+
+    private void compileBlock() throws IOException {
+        expect("{");
+        while (!accept("}")) {
+            compileStatement();
+        }
+    }
+
+    private void compileStatement() throws IOException {
+        String token = next();
+        if ("float".equals(token)) {
+            String name = next();
+            if (mVars.containsKey(name)) {
+                throw error("Variable " + name + " already defined");
+            }
+            int var = mVars.size();
+            mVars.put(name, var);
+            expect("=");
+            mCode.writeByte(OP_SET_VAR);
+            mCode.writeByte(var);
+            emitExpr(parseExpr());
+            expect(";");
+            return;
+        }
+
+        if ("if".equals(token)) {
+            compileIf();
+            return;
+        }
+
+        expect("(");
+        List<Expr> args = new ArrayList<>();
+        if (!accept(")")) {
+            do {
+                args.add(parseExpr());
+            } while (accept(","));
+            expect(")");
+        }
+        expect(";");
+        compileCall(token, args);
+    }
+
+    private void compileIf() throws IOException {
+        expect("(");
+        Expr lhs = parseExpr();
+        String comparison = next();
+        int cmp = -1;
+        for (int i = 0; i < COMPARISONS.length; i++) {
+            if (COMPARISONS[i].equals(comparison)) {
+                cmp = i;
+            }
+        }
+        if (cmp < 0) {
+            throw error("Expected a comparison but got '" + comparison + "'");
+        }
+        Expr rhs = parseExpr();
+        expect(")");
+
+        mCode.writeByte(OP_IF);
+        mCode.writeByte(cmp);
+        emitExpr(lhs);
+        emitExpr(rhs);
+        int elseTargetPos = mCode.size();
+        mCode.writeInt(0); // patched below
+        compileBlock();
+
+        if (accept("else")) {
+            mCode.writeByte(OP_JUMP);
+            int endTargetPos = mCode.size();
+            mCode.writeInt(0); // patched below
+            patchTarget(elseTargetPos, mCode.size());
+            if (accept("if")) {
+                compileIf();
+            } else {
+                compileBlock();
+            }
+            patchTarget(endTargetPos, mCode.size());
+        } else {
+            patchTarget(elseTargetPos, mCode.size());
+        }
+    }
+
+    private void patchTarget(int pos, int target) throws IOException {
+        mCode.flush();
+        byte[] bytes = mCodeBytes.toByteArray();
+        bytes[pos] = (byte) (target >>> 24);
+        bytes[pos + 1] = (byte) (target >>> 16);
+        bytes[pos + 2] = (byte) (target >>> 8);
+        bytes[pos + 3] = (byte) target;
+        mCodeBytes.reset();
+        mCodeBytes.write(bytes);
+    }
+
+    private void compileCall(String name, List<Expr> args) throws IOException {
+        switch (name) {
+            case "canvas.save":
+                emitOp(OP_SAVE, args, 0);
+                break;
+            case "canvas.restore":
+                emitOp(OP_RESTORE, args, 0);
+                break;
+            case "canvas.translate":
+                emitOp(OP_TRANSLATE, args, 2);
+                break;
+            case "canvas.rotate":
+                emitOp(OP_ROTATE, args, 3);
+                break;
+            case "canvas.scale":
+                emitOp(OP_SCALE, args, 4);
+                break;
+            case "scaleUniform":
+                checkArgCount(args, 3);
+                emitOp(OP_SCALE, args(args.get(0), args.get(0), args.get(1), args.get(2)), 4);
+                break;
+            case "path.reset":
+                emitOp(OP_PATH_RESET, args, 0);
+                break;
+            case "path.moveTo":
+                emitOp(OP_PATH_MOVE_TO, args, 2);
+                break;
+            case "path.lineTo":
+                emitOp(OP_PATH_LINE_TO, args, 2);
+                break;
+            case "arcTo":
+                emitOp(OP_PATH_ARC_TO, args.subList(0, 6), 6);
+                emitByteArg(args.get(6));
+                break;
+            case "path.close":
+                emitOp(OP_PATH_CLOSE, args, 0);
+                break;
+            case "drawRect":
+                emitOp(OP_DRAW_RECT, args.subList(0, 4), 4);
+                emitByteArg(args.get(4));
+                break;
+            case "drawArc":
+                emitOp(OP_DRAW_ARC, args.subList(0, 6), 6);
+                emitByteArg(args.get(6));
+                emitByteArg(args.get(7));
+                break;
+            case "drawOval":
+                emitOp(OP_DRAW_OVAL, args.subList(0, 4), 4);
+                emitByteArg(args.get(4));
+                break;
+            case "drawRoundRect":
+                emitOp(OP_DRAW_ROUND_RECT, args.subList(0, 6), 6);
+                emitByteArg(args.get(6));
+                break;
+            case "drawPath":
+                checkArgCount(args, 2);
+                if (!(args.get(0) instanceof Path)) {
+                    throw error("drawPath can only draw 'path'");
+                }
+                mCode.writeByte(OP_DRAW_PATH);
+                emitByteArg(args.get(1));
+                break;
+            default:
+                throw error("Unknown call " + name);
+        }
+    }
+
+    private static List<Expr> args(Expr... args) {
+        List<Expr> list = new ArrayList<>();
+        for (Expr arg : args) {
+            list.add(arg);
+        }
+        return list;
+    }
+
+    private void checkArgCount(List<Expr> args, int count) {
+        if (args.size() != count) {
+            throw error("Expected " + count + " arguments but got " + args.size());
+        }
+    }
+
+    private void emitOp(byte op, List<Expr> args, int argCount) throws IOException {
+        checkArgCount(args, argCount);
+        mCode.writeByte(op);
+        for (Expr arg : args) {
+            emitExpr(arg);
+        }
+    }
+
+    private void emitByteArg(Expr arg) throws IOException {
+        if (!(arg instanceof Const)) {
+            throw error("Expected a constant");
+        }
+        mCode.writeByte((int) ((Const) arg).value);
+    }
+
+    private void emitExpr(Expr expr) throws IOException {
+        if (expr instanceof Const) {
+            mCode.writeByte(EXPR_CONST);
+            mCode.writeFloat(((Const) expr).value);
+        } else if (expr instanceof Var) {
+            mCode.writeByte(EXPR_VAR);
+            mCode.writeByte(((Var) expr).index);
+        } else if (expr instanceof Path) {
+            throw error("'path' can only be passed to drawPath");
+        } else {
+            Op op = (Op) expr;
+            mCode.writeByte(op.op);
+            for (Expr arg : op.args) {
+                emitExpr(arg);
+            }
+        }
+    }
+
+    /*
+        Expressions
+     */
+
+    private interface Expr {
+    }
+
+    private static class Const implements Expr {
+        float value;
+
+        Const(float value) {
+            this.value = value;
+        }
+    }
+
+    private static class Var implements Expr {
+        int index;
+
+        Var(int index) {
+            this.index = index;
+        }
+    }
+
+    private static class Path implements Expr {
+    }
+
+    private static class Op implements Expr {
+        byte op;
+        Expr[] args;
+
+        Op(byte op, Expr... args) {
+            this.op = op;
+            this.args = args;
+        }
+    }
+
+    private Expr parseExpr() {
+        Expr expr = parseTerm();
+        while (true) {
+            if (accept("+")) {
+                expr = fold(new Op(EXPR_ADD, expr, parseTerm()));
+            } else if (accept("-")) {
+                expr = fold(new Op(EXPR_SUB, expr, parseTerm()));
+            } else {
+                return expr;
+            }
+        }
+    }
+
+    private Expr parseTerm() {
+        Expr expr = parseUnary();
+        while (true) {
+            if (accept("*")) {
+                expr = fold(new Op(EXPR_MUL, expr, parseUnary()));
+            } else if (accept("/")) {
+                expr = fold(new Op(EXPR_DIV, expr, parseUnary()));
+            } else {
+                return expr;
+            }
+        }
+    }
+
+    private Expr parseUnary() {
+        if (accept("-")) {
+            return fold(new Op(EXPR_NEG, parseUnary()));
+        }
+        return parsePrimary();
+    }
+
+    private Expr parsePrimary() {
+        String token = next();
+        if (Character.isDigit(token.charAt(0)) || token.charAt(0) == '.') {
+            return new Const(Float.parseFloat(token));
+        } else if ("(".equals(token)) {
+            Expr expr = parseExpr();
+            expect(")");
+            return expr;
+        }
+
+        switch (token) {
+            case "COLOR_1":
+                return new Const(0);
+            case "COLOR_2":
+                return new Const(1);
+            case "COLOR_3":
+                return new Const(2);
+            case "true":
+                return new Const(1);
+            case "false":
+                return new Const(0);
+            case "path":
+                return new Path();
+            case "interpolate":
+                return parseCall(EXPR_INTERPOLATE, 3);
+            case "progress":
+                return parseCall(EXPR_PROGRESS, 3);
+            case "decelerate5":
+                return parseCall(EXPR_DECELERATE5, 1);
+            case "accelerate5":
+                return parseCall(EXPR_ACCELERATE5, 1);
+        }
+
+        Integer var = mVars.get(token);
+        if (var == null) {
+            throw error("Unknown variable " + token);
+        }
+        return new Var(var);
+    }
+
+    private Expr parseCall(byte op, int argCount) {
+        expect("(");
+        Expr[] args = new Expr[argCount];
+        for (int i = 0; i < argCount; i++) {
+            if (i > 0) {
+                expect(",");
+            }
+            args[i] = parseExpr();
+        }
+        expect(")");
+        return new Op(op, args);
+    }
+
+    /**
+     * Evaluates arithmetic on constants at compile time, in float precision just like javac.
+     */
+    private static Expr fold(Op op) {
+        for (Expr arg : op.args) {
+            if (!(arg instanceof Const)) {
+                return op;
+            }
+        }
+
+        float a = ((Const) op.args[0]).value;
+        float b = op.args.length > 1 ? ((Const) op.args[1]).value : 0;
+        switch (op.op) {
+            case EXPR_ADD:
+                return new Const(a + b);
+            case EXPR_SUB:
+                return new Const(a - b);
+            case EXPR_MUL:
+                return new Const(a * b);
+            case EXPR_DIV:
+                return new Const(a / b);
+            case EXPR_NEG:
+                return new Const(-a);
+        }
+        return op;
+    }
+
+    /*
+        Output
+     */
+
+    public void write(FileOutputStream stream) throws IOException {
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerBytes);
+
+        // the header size doesn't depend on the offsets in it, so lay it out once to measure it
+        writeHeader(header, new int[mGlyphs.size()], new int[mGlyphs.size()]);
+        int offset = header.size();
+
+        int[] widthOffsets = new int[mGlyphs.size()];
+        int[] codeOffsets = new int[mGlyphs.size()];
+        for (int i = 0; i < mGlyphs.size(); i++) {
+            widthOffsets[i] = offset;
+            offset += mGlyphs.get(i).width.length;
+            codeOffsets[i] = offset;
+            offset += mGlyphs.get(i).code.length;
+        }
+
+        headerBytes.reset();
+        header = new DataOutputStream(headerBytes);
+        writeHeader(header, widthOffsets, codeOffsets);
+        for (CompiledGlyph glyph : mGlyphs) {
+            header.write(glyph.width);
+            header.write(glyph.code);
+        }
+        header.flush();
+        stream.write(headerBytes.toByteArray());
+    }
+
+    private void writeHeader(DataOutputStream out, int[] widthOffsets, int[] codeOffsets)
+            throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeShort(mGlyphs.size());
+        for (int i = 0; i < mGlyphs.size(); i++) {
+            CompiledGlyph glyph = mGlyphs.get(i);
+            writeString(out, glyph.key);
+            writeString(out, glyph.start);
+            writeString(out, glyph.end);
+            out.writeByte(glyph.varCount);
+            out.writeInt(widthOffsets[i]);
+            out.writeInt(codeOffsets[i]);
+        }
+        out.writeShort(mAliasKeys.size());
+        for (int i = 0; i < mAliasKeys.size(); i++) {
+            writeString(out, mAliasKeys.get(i));
+            out.writeShort(mAliasGlyphs.get(i));
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        out.writeByte(s.length());
+        out.writeBytes(s);
+    }
+}